@@ -0,0 +1,12 @@
+package com.example.todo;
+
+public record ArchivedTask(
+        int id,
+        String title,
+        String notes,
+        String dueDate,
+        String createdAt,
+        String completedAt,
+        String archivedAt
+) {
+}
@@ -0,0 +1,217 @@
+package com.example.todo;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Non-blocking facade over a TaskStore. Reads run on a thread-per-task executor, using virtual
+// threads when the runtime has them, with a cap on how many database operations run at once.
+// Single task writes reuse the repository's queued writer. Every returned future fails with a
+// TimeoutException after the configured timeout; cancelling it (or timing out) interrupts the call
+// if it is still waiting for a slot or a connection. A write that already reached the writer queue
+// is not withdrawn and may still commit after its future has timed out.
+public class AsyncToDoRepository implements AutoCloseable {
+    private static final int DEFAULT_MAX_CONCURRENT = 16;
+    private static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(30);
+
+    private final TaskStore repository;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final long timeoutMillis;
+
+    public AsyncToDoRepository(TaskStore repository) {
+        this(repository, DEFAULT_MAX_CONCURRENT, DEFAULT_TIMEOUT);
+    }
+
+    public AsyncToDoRepository(TaskStore repository, int maxConcurrent, Duration timeout) {
+        this.repository = repository;
+        this.executor = VirtualThreads.newThreadPerTaskExecutor("todo-db-async-", maxConcurrent);
+        this.permits = new Semaphore(maxConcurrent);
+        this.timeoutMillis = timeout.toMillis();
+    }
+
+    public CompletableFuture<User> ensureUser(String name) {
+        return submit(() -> repository.ensureUser(name));
+    }
+
+    public CompletableFuture<Optional<User>> findUserByName(String name) {
+        return submit(() -> repository.findUserByName(name));
+    }
+
+    public CompletableFuture<Optional<User>> findUserById(int userId) {
+        return submit(() -> repository.findUserById(userId));
+    }
+
+    public CompletableFuture<User> updateProfile(int userId, String displayName, String focusArea, Integer dailyGoal) {
+        return submit(() -> repository.updateProfile(userId, displayName, focusArea, dailyGoal));
+    }
+
+    public CompletableFuture<List<Task>> fetchTasks(int userId) {
+        return submit(() -> repository.fetchTasks(userId));
+    }
+
+    public CompletableFuture<List<Task>> fetchTasksByStatus(int userId, TaskStatus status) {
+        return submit(() -> repository.fetchTasksByStatus(userId, status));
+    }
+
+    public CompletableFuture<Board> fetchBoard(int userId) {
+        return submit(() -> repository.fetchBoard(userId));
+    }
+
+    public CompletableFuture<List<Task>> fetchTasksAfter(int userId, Task after, int limit) {
+        return submit(() -> repository.fetchTasksAfter(userId, after, limit));
+    }
+
+    // Async counterpart of streamTasks: pages through the user's tasks and hands each one to the consumer.
+    public CompletableFuture<Void> forEachTask(int userId, int pageSize, Consumer<Task> consumer) {
+        return submit(() -> {
+            try (var tasks = repository.streamTasks(userId, pageSize)) {
+                tasks.forEach(consumer);
+            }
+            return null;
+        });
+    }
+
+    public CompletableFuture<List<Task>> fetchOverdueTasks(int userId, LocalDate today) {
+        return submit(() -> repository.fetchOverdueTasks(userId, today));
+    }
+
+    public CompletableFuture<List<Task>> fetchTasksDueBetween(int userId, LocalDate from, LocalDate to) {
+        return submit(() -> repository.fetchTasksDueBetween(userId, from, to));
+    }
+
+    public CompletableFuture<List<Task>> fetchNextDueTasks(int userId, LocalDate from, int limit) {
+        return submit(() -> repository.fetchNextDueTasks(userId, from, limit));
+    }
+
+    public CompletableFuture<List<Task>> searchTasks(int userId, String query, int limit) {
+        return submit(() -> repository.searchTasks(userId, query, limit));
+    }
+
+    public CompletableFuture<Task> addTask(int userId, String title, String notes, String dueDate) {
+        return withTimeout(repository.addTaskAsync(userId, title, notes, dueDate));
+    }
+
+    public CompletableFuture<List<Task>> addTasks(int userId, List<NewTask> newTasks) {
+        return submit(() -> repository.addTasks(userId, newTasks));
+    }
+
+    public CompletableFuture<Boolean> markComplete(int userId, int taskId) {
+        return updateTaskStatus(userId, taskId, TaskStatus.DONE);
+    }
+
+    public CompletableFuture<Boolean> markIncomplete(int userId, int taskId) {
+        return updateTaskStatus(userId, taskId, TaskStatus.TODO);
+    }
+
+    public CompletableFuture<Boolean> updateTaskStatus(int userId, int taskId, TaskStatus status) {
+        return withTimeout(repository.updateTaskStatusAsync(userId, taskId, status));
+    }
+
+    public CompletableFuture<List<Boolean>> updateStatuses(int userId, List<StatusChange> changes) {
+        return submit(() -> repository.updateStatuses(userId, changes));
+    }
+
+    public CompletableFuture<Boolean> deleteTask(int userId, int taskId) {
+        return withTimeout(repository.deleteTaskAsync(userId, taskId));
+    }
+
+    public CompletableFuture<List<Boolean>> deleteTasks(int userId, List<Integer> taskIds) {
+        return submit(() -> repository.deleteTasks(userId, taskIds));
+    }
+
+    public CompletableFuture<TaskStats> fetchStats(int userId) {
+        return submit(() -> repository.fetchStats(userId));
+    }
+
+    public CompletableFuture<Integer> archiveCompletedTasks(Duration olderThan) {
+        return submit(() -> repository.archiveCompletedTasks(olderThan));
+    }
+
+    public CompletableFuture<List<ArchivedTask>> fetchArchivedTasks(int userId, ArchivedTask after, int limit) {
+        return submit(() -> repository.fetchArchivedTasks(userId, after, limit));
+    }
+
+    public CompletableFuture<Optional<Task>> restoreTask(int userId, int archivedTaskId) {
+        return submit(() -> repository.restoreTask(userId, archivedTaskId));
+    }
+
+    public CompletableFuture<TaskChanges> fetchTasksChangedSince(int userId, long version) {
+        return submit(() -> repository.fetchTasksChangedSince(userId, version));
+    }
+
+    public CompletableFuture<Integer> compactTombstones(Duration olderThan) {
+        return submit(() -> repository.compactTombstones(olderThan));
+    }
+
+    public CompletableFuture<Void> rebuildTaskCounters() {
+        return submit(() -> {
+            repository.rebuildTaskCounters();
+            return null;
+        });
+    }
+
+    public CompletableFuture<List<Integer>> verifyTaskCounters() {
+        return submit(repository::verifyTaskCounters);
+    }
+
+    public <T> CompletableFuture<T> readConsistent(Supplier<T> reads) {
+        return submit(() -> repository.readConsistent(reads));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> call) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> running = executor.submit(() -> {
+            try {
+                permits.acquire();
+            } catch (InterruptedException ex) {
+                result.completeExceptionally(new CancellationException("Cancelled while waiting for a database slot"));
+                return;
+            }
+            try {
+                if (!result.isDone()) {
+                    result.complete(call.get());
+                }
+            } catch (RuntimeException ex) {
+                result.completeExceptionally(ex);
+            } finally {
+                permits.release();
+            }
+        });
+        CompletableFuture<T> timed = result.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+        timed.whenComplete((value, error) -> {
+            if (error != null) {
+                running.cancel(true);
+            }
+        });
+        return timed;
+    }
+
+    // Times out a copy so the repository's own future (and the cache update chained on it) still
+    // completes normally when the write commits late.
+    private <T> CompletableFuture<T> withTimeout(CompletableFuture<T> future) {
+        return future.copy().orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.todo;
+
+import java.util.List;
+
+public record Board(List<Task> todo, List<Task> doing, List<Task> done, TaskStats stats) {
+    public List<Task> tasks(TaskStatus status) {
+        return switch (status) {
+            case TODO -> todo;
+            case DOING -> doing;
+            case DONE -> done;
+        };
+    }
+}
@@ -0,0 +1,8 @@
+package com.example.todo;
+
+public record CacheStats(long hits, long misses, long evictions) {
+    public double hitRatio() {
+        long lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+}
@@ -0,0 +1,336 @@
+package com.example.todo;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+// Write-through cache over ToDoRepository. Each active user's board is held in memory, grouped by
+// status in the same order as the SQL, and writes made through this repository are applied in place
+// once they commit. Every write or invalidation bumps the user's version, and a board loaded from
+// SQLite is only installed if the version did not move while it was being read.
+public class CachedToDoRepository extends ToDoRepository {
+    private static final int DEFAULT_MAX_USERS = 64;
+    private static final Duration DEFAULT_IDLE_TIMEOUT = Duration.ofMinutes(30);
+    // Matches "ORDER BY due_date, created_at": SQLite sorts NULL first and the index breaks ties by id.
+    private static final Comparator<Task> BOARD_ORDER = Comparator
+        .comparing(Task::dueDate, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+        .thenComparing(Task::createdAt)
+        .thenComparingInt(Task::id);
+
+    private final int maxUsers;
+    private final long idleTimeoutNanos;
+    private final Map<Integer, CachedBoard> boards = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Integer, Long> versions = new HashMap<>();
+    private long epoch;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public CachedToDoRepository(Database database) {
+        this(database, DEFAULT_MAX_USERS, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    public CachedToDoRepository(Database database, int maxUsers, Duration idleTimeout) {
+        this(ShardedDatabase.single(database), maxUsers, idleTimeout);
+    }
+
+    public CachedToDoRepository(ShardedDatabase shards) {
+        this(shards, DEFAULT_MAX_USERS, DEFAULT_IDLE_TIMEOUT);
+    }
+
+    public CachedToDoRepository(ShardedDatabase shards, int maxUsers, Duration idleTimeout) {
+        super(shards);
+        this.maxUsers = maxUsers;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+    }
+
+    @Override
+    public Board fetchBoard(int userId) {
+        Board cached = cachedBoard(userId);
+        if (cached != null) {
+            return cached;
+        }
+        long version = versionOf(userId);
+        Board loaded = super.fetchBoard(userId);
+        install(userId, version, loaded);
+        return loaded;
+    }
+
+    @Override
+    public List<Task> fetchTasks(int userId) {
+        Board board = fetchBoard(userId);
+        List<Task> open = new ArrayList<>(board.todo().size() + board.doing().size());
+        open.addAll(board.todo());
+        open.addAll(board.doing());
+        open.sort(BOARD_ORDER);
+        List<Task> tasks = new ArrayList<>(open.size() + board.done().size());
+        tasks.addAll(open);
+        tasks.addAll(board.done());
+        return tasks;
+    }
+
+    @Override
+    public List<Task> fetchTasksByStatus(int userId, TaskStatus status) {
+        return new ArrayList<>(fetchBoard(userId).tasks(status));
+    }
+
+    @Override
+    public TaskStats fetchStats(int userId) {
+        Board cached = cachedBoard(userId);
+        return cached != null ? cached.stats() : super.fetchStats(userId);
+    }
+
+    @Override
+    public CompletableFuture<Task> addTaskAsync(int userId, String title, String notes, String dueDate) {
+        return super.addTaskAsync(userId, title, notes, dueDate).thenApply(task -> {
+            applyAdded(userId, List.of(task));
+            return task;
+        });
+    }
+
+    @Override
+    public List<Task> addTasks(int userId, List<NewTask> newTasks) {
+        List<Task> added = super.addTasks(userId, newTasks);
+        applyAdded(userId, added);
+        return added;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateTaskStatusAsync(int userId, int taskId, TaskStatus status) {
+        return super.updateTaskStatusAsync(userId, taskId, status).thenApply(updated -> {
+            if (updated) {
+                applyStatusChanges(userId, List.of(new StatusChange(taskId, status)));
+            }
+            return updated;
+        });
+    }
+
+    @Override
+    public List<Boolean> updateStatuses(int userId, List<StatusChange> changes) {
+        List<Boolean> results = super.updateStatuses(userId, changes);
+        List<StatusChange> applied = new ArrayList<>();
+        for (int i = 0; i < changes.size(); i++) {
+            if (results.get(i)) {
+                applied.add(changes.get(i));
+            }
+        }
+        applyStatusChanges(userId, applied);
+        return results;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteTaskAsync(int userId, int taskId) {
+        return super.deleteTaskAsync(userId, taskId).thenApply(deleted -> {
+            if (deleted) {
+                applyDeleted(userId, List.of(taskId));
+            }
+            return deleted;
+        });
+    }
+
+    @Override
+    public List<Boolean> deleteTasks(int userId, List<Integer> taskIds) {
+        List<Boolean> results = super.deleteTasks(userId, taskIds);
+        List<Integer> deleted = new ArrayList<>();
+        for (int i = 0; i < taskIds.size(); i++) {
+            if (results.get(i)) {
+                deleted.add(taskIds.get(i));
+            }
+        }
+        applyDeleted(userId, deleted);
+        return results;
+    }
+
+    @Override
+    List<Integer> archiveBatch(Database database, String age) {
+        List<Integer> owners = super.archiveBatch(database, age);
+        for (int userId : new HashSet<>(owners)) {
+            invalidate(userId);
+        }
+        return owners;
+    }
+
+    @Override
+    public Optional<Task> restoreTask(int userId, int archivedTaskId) {
+        Optional<Task> restored = super.restoreTask(userId, archivedTaskId);
+        invalidate(userId);
+        return restored;
+    }
+
+    @Override
+    public void rebuildTaskCounters() {
+        super.rebuildTaskCounters();
+        invalidateAll();
+    }
+
+    // Hook for writers that bypass this repository, such as another process or a maintenance tool.
+    public synchronized void invalidate(int userId) {
+        bumpVersion(userId);
+        boards.remove(userId);
+    }
+
+    public synchronized void invalidateAll() {
+        epoch++;
+        boards.clear();
+    }
+
+    public synchronized CacheStats taskCacheStats() {
+        return new CacheStats(hits, misses, evictions);
+    }
+
+    private synchronized Board cachedBoard(int userId) {
+        evictIdle();
+        CachedBoard cached = boards.get(userId);
+        if (cached == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        cached.touch();
+        return cached.board;
+    }
+
+    // Both parts only ever grow, so their sum changes whenever either one does.
+    private synchronized long versionOf(int userId) {
+        return epoch + versions.getOrDefault(userId, 0L);
+    }
+
+    private synchronized void install(int userId, long loadedAtVersion, Board board) {
+        if (versionOf(userId) != loadedAtVersion) {
+            return;
+        }
+        boards.put(userId, new CachedBoard(board));
+        while (boards.size() > maxUsers) {
+            Iterator<Map.Entry<Integer, CachedBoard>> eldest = boards.entrySet().iterator();
+            eldest.next();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        Iterator<CachedBoard> iterator = boards.values().iterator();
+        while (iterator.hasNext()) {
+            CachedBoard cached = iterator.next();
+            if (now - cached.lastAccessNanos < idleTimeoutNanos) {
+                return;
+            }
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    private void bumpVersion(int userId) {
+        versions.merge(userId, 1L, Long::sum);
+    }
+
+    private synchronized void applyAdded(int userId, List<Task> added) {
+        bumpVersion(userId);
+        CachedBoard cached = boards.get(userId);
+        if (cached == null || added.isEmpty()) {
+            return;
+        }
+        Board board = cached.board;
+        cached.board = rebuild(board, added, List.of());
+    }
+
+    private synchronized void applyStatusChanges(int userId, List<StatusChange> changes) {
+        bumpVersion(userId);
+        CachedBoard cached = boards.get(userId);
+        if (cached == null || changes.isEmpty()) {
+            return;
+        }
+        Map<Integer, TaskStatus> statuses = new HashMap<>();
+        for (StatusChange change : changes) {
+            statuses.put(change.taskId(), change.status());
+        }
+        Board board = cached.board;
+        List<Task> moved = new ArrayList<>();
+        for (TaskStatus column : TaskStatus.values()) {
+            for (Task task : board.tasks(column)) {
+                TaskStatus status = statuses.get(task.id());
+                if (status != null) {
+                    moved.add(new Task(task.id(), task.title(), task.notes(), task.dueDate(),
+                        status == TaskStatus.DONE, task.createdAt(), status));
+                }
+            }
+        }
+        cached.board = rebuild(board, moved, statuses.keySet());
+    }
+
+    private synchronized void applyDeleted(int userId, List<Integer> taskIds) {
+        bumpVersion(userId);
+        CachedBoard cached = boards.get(userId);
+        if (cached == null || taskIds.isEmpty()) {
+            return;
+        }
+        Board board = cached.board;
+        cached.board = rebuild(board, List.of(), taskIds);
+    }
+
+    // Returns a new board without the removed ids and with the given tasks placed in their columns.
+    // An upsert replaces any card with its id: a board loaded between a write's commit and its
+    // callback already holds the written task. Writes never touch the archive, so its share of the
+    // stats carries over unchanged.
+    private static Board rebuild(Board board, List<Task> upserts, Collection<Integer> removedIds) {
+        int hot = board.todo().size() + board.doing().size() + board.done().size();
+        int archived = board.stats().total() - hot;
+        List<Task> nextTodo = new ArrayList<>(board.todo().size() + upserts.size());
+        List<Task> nextDoing = new ArrayList<>(board.doing().size() + upserts.size());
+        List<Task> nextDone = new ArrayList<>(board.done().size() + upserts.size());
+        Set<Integer> removed = new HashSet<>(removedIds);
+        for (Task task : upserts) {
+            removed.add(task.id());
+        }
+        for (List<Task> column : List.of(board.todo(), board.doing(), board.done())) {
+            for (Task task : column) {
+                if (!removed.contains(task.id())) {
+                    columnFor(task.status(), nextTodo, nextDoing, nextDone).add(task);
+                }
+            }
+        }
+        for (Task task : upserts) {
+            List<Task> column = columnFor(task.status(), nextTodo, nextDoing, nextDone);
+            int index = Collections.binarySearch(column, task, BOARD_ORDER);
+            column.add(index < 0 ? -index - 1 : index, task);
+        }
+        int total = nextTodo.size() + nextDoing.size() + nextDone.size();
+        return new Board(List.copyOf(nextTodo), List.copyOf(nextDoing), List.copyOf(nextDone),
+            new TaskStats(total + archived, nextDone.size() + archived));
+    }
+
+    private static List<Task> columnFor(TaskStatus status, List<Task> todo, List<Task> doing, List<Task> done) {
+        return switch (status) {
+            case TODO -> todo;
+            case DOING -> doing;
+            case DONE -> done;
+        };
+    }
+
+    private static final class CachedBoard {
+        private Board board;
+        private long lastAccessNanos;
+
+        private CachedBoard(Board board) {
+            this.board = new Board(List.copyOf(board.todo()), List.copyOf(board.doing()),
+                List.copyOf(board.done()), board.stats());
+            this.lastAccessNanos = System.nanoTime();
+        }
+
+        private void touch() {
+            lastAccessNanos = System.nanoTime();
+        }
+    }
+}
@@ -0,0 +1,251 @@
+package com.example.todo;
+
+import org.sqlite.SQLiteConfig;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Bounded pool of long-lived SQLite connections. Borrowed connections are proxies whose
+// close() hands the physical connection back to the pool instead of closing the file handle.
+// Each physical connection keeps its own prepared statement cache for its whole lifetime.
+final class ConnectionPool implements AutoCloseable {
+    private final String jdbcUrl;
+    private final SQLiteConfig config;
+    private final int maxSize;
+    private final int statementCacheSize;
+    private final long acquireTimeoutMillis;
+    private final Semaphore permits;
+    private final BlockingDeque<PhysicalConnection> idle = new LinkedBlockingDeque<>();
+    private final AtomicInteger open = new AtomicInteger();
+    private final AtomicLong borrows = new AtomicLong();
+    private final AtomicLong creations = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final StatementCache.Counters statementCounters;
+    private volatile boolean closed;
+
+    ConnectionPool(String jdbcUrl, SQLiteConfig config, int maxSize, int statementCacheSize, Duration acquireTimeout,
+                   StatementCache.Counters statementCounters) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.jdbcUrl = jdbcUrl;
+        this.config = config;
+        this.maxSize = maxSize;
+        this.statementCacheSize = statementCacheSize;
+        this.acquireTimeoutMillis = acquireTimeout.toMillis();
+        this.permits = new Semaphore(maxSize, true);
+        this.statementCounters = statementCounters;
+    }
+
+    Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed");
+        }
+        long started = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                throw new SQLException("Timed out waiting for a database connection");
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection", ex);
+        }
+        totalWaitNanos.addAndGet(System.nanoTime() - started);
+        borrows.incrementAndGet();
+        try {
+            return wrap(takeIdleOrCreate());
+        } catch (SQLException | RuntimeException ex) {
+            permits.release();
+            throw ex;
+        }
+    }
+
+    PoolStats stats() {
+        return new PoolStats(
+            maxSize,
+            open.get(),
+            idle.size(),
+            borrows.get(),
+            creations.get(),
+            timeouts.get(),
+            TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get())
+        );
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        PhysicalConnection physical;
+        while ((physical = idle.pollFirst()) != null) {
+            discard(physical);
+        }
+    }
+
+    private PhysicalConnection takeIdleOrCreate() throws SQLException {
+        PhysicalConnection physical;
+        while ((physical = idle.pollFirst()) != null) {
+            if (!physical.connection().isClosed()) {
+                return physical;
+            }
+            discard(physical);
+        }
+        Connection created = config.createConnection(jdbcUrl);
+        open.incrementAndGet();
+        creations.incrementAndGet();
+        return new PhysicalConnection(created, new StatementCache(created, statementCacheSize, statementCounters));
+    }
+
+    private void release(PhysicalConnection physical) {
+        try {
+            Connection connection = physical.connection();
+            if (closed || connection.isClosed()) {
+                discard(physical);
+                return;
+            }
+            if (!connection.getAutoCommit()) {
+                connection.rollback();
+                connection.setAutoCommit(true);
+            }
+            idle.offerFirst(physical);
+        } catch (SQLException ex) {
+            discard(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    private void discard(PhysicalConnection physical) {
+        open.decrementAndGet();
+        physical.statements().closeAll();
+        try {
+            physical.connection().close();
+        } catch (SQLException ignored) {
+            // The physical connection is being dropped anyway.
+        }
+    }
+
+    private Connection wrap(PhysicalConnection physical) {
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[] {Connection.class},
+            new PooledConnectionHandler(physical)
+        );
+    }
+
+    private static Object delegate(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    private record PhysicalConnection(Connection connection, StatementCache statements) {
+    }
+
+    private final class PooledConnectionHandler implements InvocationHandler {
+        private final PhysicalConnection physical;
+        private volatile boolean returned;
+
+        private PooledConnectionHandler(PhysicalConnection physical) {
+            this.physical = physical;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!returned) {
+                        returned = true;
+                        release(physical);
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || physical.connection().isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + physical.connection();
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool");
+            }
+            if ("prepareStatement".equals(method.getName()) && args.length == 1) {
+                String sql = (String) args[0];
+                PreparedStatement statement = physical.statements().checkOut(sql);
+                return Proxy.newProxyInstance(
+                    PreparedStatement.class.getClassLoader(),
+                    new Class<?>[] {PreparedStatement.class},
+                    new CachedStatementHandler(this, (Connection) proxy, sql, statement)
+                );
+            }
+            return delegate(physical.connection(), method, args);
+        }
+    }
+
+    private static final class CachedStatementHandler implements InvocationHandler {
+        private final PooledConnectionHandler owner;
+        private final Connection connection;
+        private final String sql;
+        private final PreparedStatement statement;
+        private boolean closed;
+
+        private CachedStatementHandler(PooledConnectionHandler owner, Connection connection, String sql,
+                                       PreparedStatement statement) {
+            this.owner = owner;
+            this.connection = connection;
+            this.sql = sql;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        if (owner.returned) {
+                            statement.close();
+                        } else {
+                            owner.physical.statements().checkIn(sql, statement);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || statement.isClosed();
+                case "getConnection":
+                    return connection;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached" + statement;
+                default:
+                    break;
+            }
+            if (closed) {
+                throw new SQLException("Statement is closed");
+            }
+            return delegate(statement, method, args);
+        }
+    }
+}
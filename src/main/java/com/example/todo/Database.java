@@ -1,87 +1,268 @@
 package com.example.todo;
 
+import org.sqlite.SQLiteConfig;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashSet;
-import java.util.Set;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
+
+// SQLite in WAL mode allows one writer alongside any number of readers. Writes (and migrations) use
+// the single read-write connection behind connect(); queries use read-only connections from
+// connectForRead(), so readers never queue behind the writer and never take the write lock.
+public class Database implements AutoCloseable {
+    private static final int DEFAULT_READ_POOL_SIZE = 4;
+    private static final int WRITE_POOL_SIZE = 1;
+    private static final int STATEMENT_CACHE_SIZE = 32;
+    private static final Duration ACQUIRE_TIMEOUT = Duration.ofSeconds(30);
+    private static final int WRITE_QUEUE_CAPACITY = 1_024;
+    private static final int WRITE_GROUP_SIZE = 64;
+    // Zero groups whatever queued up while the previous commit ran, without delaying a lone write.
+    private static final Duration WRITE_GROUP_DELAY = Duration.ZERO;
+    private static final int BUSY_TIMEOUT_MILLIS = 5_000;
+    // Negative cache_size is in KiB: roughly 8 MB of page cache per connection.
+    private static final int CACHE_SIZE_KIB = -8_000;
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
 
-public class Database {
-    private final String jdbcUrl;
+    private final StatementCache.Counters statementCounters = new StatementCache.Counters();
+    private final ConnectionPool writePool;
+    private final ConnectionPool readPool;
+    private final TaskWriteQueue writeQueue;
+    private final ThreadLocal<Connection> readTransaction = new ThreadLocal<>();
 
     public Database(String jdbcUrl) {
-        this.jdbcUrl = jdbcUrl;
+        this(jdbcUrl, DEFAULT_READ_POOL_SIZE);
+    }
+
+    public Database(String jdbcUrl, int readPoolSize) {
+        this.writePool = new ConnectionPool(jdbcUrl, writeConfig(), WRITE_POOL_SIZE, STATEMENT_CACHE_SIZE,
+            ACQUIRE_TIMEOUT, statementCounters);
+        this.readPool = new ConnectionPool(jdbcUrl, readConfig(), readPoolSize, STATEMENT_CACHE_SIZE,
+            ACQUIRE_TIMEOUT, statementCounters);
+        this.writeQueue = new TaskWriteQueue(this, WRITE_QUEUE_CAPACITY, WRITE_GROUP_SIZE, WRITE_GROUP_DELAY);
     }
 
+    // Returns the pooled read-write connection; closing it hands the connection back to the pool.
+    // prepareStatement(sql) on it is served from that connection's statement cache.
     public Connection connect() throws SQLException {
-        return DriverManager.getConnection(jdbcUrl);
+        return writePool.borrow();
+    }
+
+    // Returns a read-only connection. Inside readTransaction() this is the transaction's connection,
+    // so every query on this thread reads from the same snapshot.
+    public Connection connectForRead() throws SQLException {
+        Connection active = readTransaction.get();
+        if (active != null) {
+            return borrowedView(active);
+        }
+        return readPool.borrow();
+    }
+
+    // Runs the reads inside one read transaction on one read-only connection.
+    public <T> T readTransaction(Supplier<T> reads) {
+        if (readTransaction.get() != null) {
+            return reads.get();
+        }
+        try (Connection connection = readPool.borrow()) {
+            connection.setAutoCommit(false);
+            readTransaction.set(connection);
+            try {
+                T result = reads.get();
+                connection.commit();
+                return result;
+            } finally {
+                readTransaction.remove();
+            }
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Failed to run read transaction", ex);
+        }
     }
 
+    // Brings the schema up to date; an already-migrated database only pays for one user_version read.
     public void initialize() {
-        try (Connection connection = connect(); Statement statement = connection.createStatement()) {
-            statement.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS users (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    name TEXT NOT NULL UNIQUE,
-                    display_name TEXT,
-                    focus_area TEXT,
-                    daily_goal INTEGER
-                )
-                """);
-            statement.executeUpdate("""
-                CREATE TABLE IF NOT EXISTS tasks (
-                    id INTEGER PRIMARY KEY AUTOINCREMENT,
-                    user_id INTEGER NOT NULL,
-                    title TEXT NOT NULL,
-                    notes TEXT,
-                    due_date TEXT,
-                    completed INTEGER NOT NULL DEFAULT 0,
-                    status TEXT NOT NULL DEFAULT 'TODO',
-                    created_at TEXT NOT NULL DEFAULT CURRENT_TIMESTAMP,
-                    FOREIGN KEY(user_id) REFERENCES users(id)
-                )
-                """);
-            ensureUserColumns(connection);
-            ensureTaskColumns(connection);
+        try (Connection connection = connect()) {
+            SchemaMigrations.migrate(connection);
         } catch (SQLException ex) {
             throw new IllegalStateException("Failed to initialize database", ex);
         }
     }
 
-    private void ensureUserColumns(Connection connection) throws SQLException {
-        Set<String> columns = new HashSet<>();
-        try (PreparedStatement statement = connection.prepareStatement("PRAGMA table_info(users)");
-             ResultSet resultSet = statement.executeQuery()) {
-            while (resultSet.next()) {
-                columns.add(resultSet.getString("name"));
+    // Writes a consistent, compacted copy of the database to target, which must not exist yet, and
+    // checks the copy with PRAGMA integrity_check before moving it into place. VACUUM INTO reads from
+    // one snapshot on a read-only connection, so under WAL the writer carries on throughout and,
+    // unlike the page-by-page backup API, the copy never restarts when a write lands mid-way. The WAL
+    // cannot be checkpointed past that snapshot until the copy finishes.
+    public void backupTo(Path target) {
+        if (Files.exists(target)) {
+            throw new IllegalStateException("Backup target already exists: " + target);
+        }
+        Path partial = target.resolveSibling(target.getFileName() + ".partial");
+        try {
+            Files.deleteIfExists(partial);
+            try (Connection connection = readPool.borrow();
+                 PreparedStatement statement = connection.prepareStatement("VACUUM INTO ?")) {
+                statement.setString(1, partial.toString());
+                statement.execute();
             }
+            verifyBackup(partial);
+            Files.move(partial, target, StandardCopyOption.ATOMIC_MOVE);
+        } catch (SQLException | IOException ex) {
+            try {
+                Files.deleteIfExists(partial);
+            } catch (IOException ignored) {
+                // The next backup clears it before starting.
+            }
+            throw new IllegalStateException("Failed to back up database to " + target, ex);
         }
-        addColumnIfMissing(connection, "users", columns, "display_name", "TEXT");
-        addColumnIfMissing(connection, "users", columns, "focus_area", "TEXT");
-        addColumnIfMissing(connection, "users", columns, "daily_goal", "INTEGER");
     }
 
-    private void ensureTaskColumns(Connection connection) throws SQLException {
-        Set<String> columns = new HashSet<>();
-        try (PreparedStatement statement = connection.prepareStatement("PRAGMA table_info(tasks)");
-             ResultSet resultSet = statement.executeQuery()) {
-            while (resultSet.next()) {
-                columns.add(resultSet.getString("name"));
+    // Hands free pages back to the file system pagesPerStep at a time, each step a small write on the
+    // writer queue so task writes get in between; returns how many pages were released. Only files
+    // with auto_vacuum=INCREMENTAL can do this (new files get it when initialize() first migrates
+    // them; DatabaseMaintenance enable-incremental-vacuum converts older ones); for others it returns
+    // 0 and changes nothing.
+    public int compact(int pagesPerStep) {
+        if (pagesPerStep < 1) {
+            throw new IllegalArgumentException("Pages per step must be positive");
+        }
+        int released = 0;
+        int freed;
+        do {
+            freed = await(writeQueue.submit("Failed to compact database", connection -> {
+                if (pragma(connection, "auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+                    return 0;
+                }
+                int before = pragma(connection, "freelist_count");
+                if (before == 0) {
+                    return 0;
+                }
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("PRAGMA incremental_vacuum(" + pagesPerStep + ")");
+                }
+                return before - pragma(connection, "freelist_count");
+            }));
+            released += freed;
+        } while (freed > 0);
+        if (released > 0) {
+            // The file only shrinks once the truncation is checkpointed; PASSIVE never waits on readers.
+            try (Connection connection = connect();
+                 Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA wal_checkpoint(PASSIVE)");
+            } catch (SQLException ex) {
+                throw new IllegalStateException("Failed to checkpoint database", ex);
             }
         }
-        addColumnIfMissing(connection, "tasks", columns, "status", "TEXT NOT NULL DEFAULT 'TODO'");
+        return released;
     }
 
-    private void addColumnIfMissing(Connection connection, String tableName, Set<String> columns, String column, String type)
-        throws SQLException {
-        if (!columns.contains(column)) {
-            try (Statement statement = connection.createStatement()) {
-                statement.executeUpdate("ALTER TABLE " + tableName + " ADD COLUMN " + column + " " + type);
+    // Rewrites the whole file with auto_vacuum=INCREMENTAL so compact() can work on it. This is a full,
+    // exclusive VACUUM: run it offline.
+    public void enableIncrementalVacuum() {
+        try (Connection connection = connect();
+             Statement statement = connection.createStatement()) {
+            statement.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            statement.execute("VACUUM");
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Failed to enable incremental vacuum", ex);
+        }
+    }
+
+    static void verifyBackup(Path file) throws SQLException {
+        try (Connection connection = readConfig().createConnection("jdbc:sqlite:" + file);
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("PRAGMA integrity_check")) {
+            String result = resultSet.next() ? resultSet.getString(1) : null;
+            if (!"ok".equals(result)) {
+                throw new SQLException("Integrity check of " + file + " failed: " + result);
             }
         }
     }
 
+    TaskWriteQueue writeQueue() {
+        return writeQueue;
+    }
+
+    public PoolStats poolStats() {
+        return readPool.stats();
+    }
+
+    public PoolStats writePoolStats() {
+        return writePool.stats();
+    }
+
+    public CacheStats statementCacheStats() {
+        return statementCounters.snapshot();
+    }
+
+    @Override
+    public void close() {
+        writeQueue.close();
+        readPool.close();
+        writePool.close();
+    }
+
+    private static int pragma(Connection connection, String name) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("PRAGMA " + name)) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+
+    private static <T> T await(CompletableFuture<T> write) {
+        try {
+            return write.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    // Lets nested code "close" the shared transaction connection without returning it to the pool.
+    private static Connection borrowedView(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(
+            Connection.class.getClassLoader(),
+            new Class<?>[] {Connection.class},
+            (proxy, method, args) -> {
+                if ("close".equals(method.getName())) {
+                    return null;
+                }
+                try {
+                    return method.invoke(connection, args);
+                } catch (InvocationTargetException ex) {
+                    throw ex.getCause();
+                }
+            }
+        );
+    }
+
+    private static SQLiteConfig writeConfig() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+        config.setSynchronous(SQLiteConfig.SynchronousMode.NORMAL);
+        config.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+        config.setCacheSize(CACHE_SIZE_KIB);
+        return config;
+    }
+
+    // Opened with SQLITE_OPEN_READONLY; the WAL journal mode is a property of the file set by the writer.
+    private static SQLiteConfig readConfig() {
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(BUSY_TIMEOUT_MILLIS);
+        config.setCacheSize(CACHE_SIZE_KIB);
+        return config;
+    }
 }
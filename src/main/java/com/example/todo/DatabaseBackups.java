@@ -0,0 +1,55 @@
+package com.example.todo;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+// Rotating set of verified backups in one directory: <prefix>-<yyyyMMdd-HHmmss-SSS>.db, of which only
+// the newest few are kept. The timestamp sorts by name, so the oldest backups come first.
+final class DatabaseBackups {
+    private static final DateTimeFormatter STAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS", Locale.ROOT);
+
+    private DatabaseBackups() {
+    }
+
+    // Backs the database up into a new file and then deletes all but the newest keep backups.
+    static Path backup(Database database, Path directory, String prefix, int keep) {
+        if (keep < 1) {
+            throw new IllegalArgumentException("At least one backup must be kept");
+        }
+        Path target = directory.resolve(prefix + "-" + STAMP.format(LocalDateTime.now()) + ".db");
+        try {
+            Files.createDirectories(directory);
+            database.backupTo(target);
+            List<Path> backups = list(directory, prefix);
+            for (int i = 0; i < backups.size() - keep; i++) {
+                Files.delete(backups.get(i));
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to rotate backups in " + directory, ex);
+        }
+        return target;
+    }
+
+    // This prefix's backups in the directory, oldest first.
+    static List<Path> list(Path directory, String prefix) throws IOException {
+        Pattern name = Pattern.compile(Pattern.quote(prefix) + "-\\d{8}-\\d{6}-\\d{3}\\.db");
+        List<Path> backups = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                if (name.matcher(file.getFileName().toString()).matches()) {
+                    backups.add(file);
+                }
+            }
+        }
+        backups.sort(null);
+        return backups;
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.todo;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Offline maintenance commands for a to-do database.
+// Usage: DatabaseMaintenance <command> [jdbc-url]
+//        DatabaseMaintenance backup <directory> [jdbc-url]
+//        DatabaseMaintenance reshard <shard-count> <target-url-pattern> [source-jdbc-url...]
+public final class DatabaseMaintenance {
+    private static final int COMPACT_PAGES_PER_STEP = 256;
+    private static final int BACKUPS_KEPT = 7;
+
+    private DatabaseMaintenance() {
+    }
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            printUsage();
+            System.exit(2);
+        }
+        if ("reshard".equals(args[0])) {
+            reshard(args);
+            return;
+        }
+        if ("backup".equals(args[0])) {
+            backup(args);
+            return;
+        }
+        String jdbcUrl = args.length > 1 ? args[1] : ToDoApp.JDBC_URL;
+        try (Database database = new Database(jdbcUrl)) {
+            database.initialize();
+            ToDoRepository repository = new ToDoRepository(database);
+            switch (args[0]) {
+                case "verify-counters" -> verifyCounters(repository);
+                case "rebuild-counters" -> rebuildCounters(repository);
+                case "compact" -> System.out.printf("Released %d page(s).%n", database.compact(COMPACT_PAGES_PER_STEP));
+                case "enable-incremental-vacuum" -> {
+                    database.enableIncrementalVacuum();
+                    System.out.println("Incremental vacuum enabled.");
+                }
+                default -> {
+                    printUsage();
+                    System.exit(2);
+                }
+            }
+        }
+    }
+
+    private static void verifyCounters(ToDoRepository repository) {
+        List<Integer> drifted = repository.verifyTaskCounters();
+        if (drifted.isEmpty()) {
+            System.out.println("Task counters are consistent.");
+            return;
+        }
+        System.out.printf("Task counters differ for %d user(s): %s%n", drifted.size(), drifted);
+        System.exit(1);
+    }
+
+    private static void rebuildCounters(ToDoRepository repository) {
+        repository.rebuildTaskCounters();
+        System.out.println("Task counters rebuilt.");
+    }
+
+    // Keeps the newest BACKUPS_KEPT backups of the database in the directory.
+    private static void backup(String[] args) {
+        if (args.length < 2) {
+            printUsage();
+            System.exit(2);
+        }
+        String jdbcUrl = args.length > 2 ? args[2] : ToDoApp.JDBC_URL;
+        try (Database database = new Database(jdbcUrl)) {
+            database.initialize();
+            Path backup = DatabaseBackups.backup(database, Path.of(args[1]), "todo", BACKUPS_KEPT);
+            System.out.println("Backed up to " + backup);
+        }
+    }
+
+    private static void reshard(String[] args) {
+        if (args.length < 3) {
+            printUsage();
+            System.exit(2);
+        }
+        int shardCount = Integer.parseInt(args[1]);
+        List<String> sourceUrls = args.length > 3
+            ? Arrays.asList(args).subList(3, args.length)
+            : List.of(ToDoApp.JDBC_URL);
+        List<Database> sources = new ArrayList<>();
+        try (ShardedDatabase target = new ShardedDatabase(args[2], shardCount)) {
+            for (String sourceUrl : sourceUrls) {
+                Database source = new Database(sourceUrl);
+                sources.add(source);
+                source.initialize();
+            }
+            int[] users = Resharder.reshard(sources, target);
+            for (int index = 0; index < users.length; index++) {
+                System.out.printf("Shard %d: %d user(s)%n", index, users[index]);
+            }
+        } finally {
+            sources.forEach(Database::close);
+        }
+    }
+
+    private static void printUsage() {
+        System.err.println("Usage: DatabaseMaintenance <command> [jdbc-url]");
+        System.err.println("       DatabaseMaintenance backup <directory> [jdbc-url]");
+        System.err.println("       DatabaseMaintenance reshard <shard-count> <target-url-pattern> [source-jdbc-url...]");
+        System.err.println("Commands:");
+        System.err.println("  verify-counters   compare per-user task counters with a full recount");
+        System.err.println("  rebuild-counters  recompute per-user task counters from the tasks table");
+        System.err.println("  compact           hand space freed by deletes back to the file system while the app runs");
+        System.err.println("  enable-incremental-vacuum  rewrite an older file once so compact can work on it (app stopped)");
+        System.err.println("  backup            write a verified copy into the directory, keeping the newest 7");
+        System.err.println("  reshard           copy users and tasks into empty shard files, e.g. jdbc:sqlite:todo-%d.db");
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.todo;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+
+// Normalizes the free-text due_date column to an epoch day for indexed range queries.
+// Only ISO dates (yyyy-MM-dd), optionally followed by a time part ("2024-05-01T09:00",
+// "2024-05-01 09:00"), are recognised; anything else maps to null and the task simply
+// has no typed due day. The text column is kept unchanged either way.
+final class DueDates {
+    private static final int ISO_DATE_LENGTH = 10;
+
+    private DueDates() {
+    }
+
+    static Long toEpochDay(String dueDate) {
+        if (dueDate == null) {
+            return null;
+        }
+        String value = dueDate.trim();
+        if (value.length() > ISO_DATE_LENGTH) {
+            char separator = value.charAt(ISO_DATE_LENGTH);
+            if (separator != 'T' && separator != ' ') {
+                return null;
+            }
+            value = value.substring(0, ISO_DATE_LENGTH);
+        }
+        try {
+            return LocalDate.parse(value).toEpochDay();
+        } catch (DateTimeParseException ex) {
+            return null;
+        }
+    }
+}
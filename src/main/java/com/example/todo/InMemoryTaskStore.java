@@ -0,0 +1,1114 @@
+package com.example.todo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+// Heap-resident TaskStore for tests, demos and servers that do not need SQLite. Task fields live in
+// parallel primitive arrays indexed by slot and task ids map to slots through an IntIntMap, so a
+// million tasks cost a few arrays plus their strings instead of a million objects. Every user keeps
+// slot lists sorted in board order: one per status and one over all tasks for keyset paging.
+// A read/write lock guards the whole store. saveSnapshot/loadSnapshot persist it to one file.
+public final class InMemoryTaskStore implements TaskStore {
+    private static final int SNAPSHOT_MAGIC = 0x544F444F;
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final int INITIAL_CAPACITY = 1_024;
+    private static final int ARCHIVE_BATCH_SIZE = 200;
+    private static final long NO_DUE_DAY = Long.MIN_VALUE;
+    private static final long NOT_COMPLETED = Long.MIN_VALUE;
+    // Same text form as SQLite's CURRENT_TIMESTAMP, so timestamps compare and page the same way.
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss", Locale.ROOT);
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    // Epoch seconds for created, completed and archived times; JournaledTaskStore replays with its own.
+    private final LongSupplier clock;
+
+    private final IntObjectMap<User> usersById = new IntObjectMap<>(64);
+    private final Map<String, User> usersByName = new HashMap<>();
+    private final IntObjectMap<UserTasks> tasksByUser = new IntObjectMap<>(64);
+    private int lastUserId;
+    private int lastTaskId;
+    private int lastArchivedId;
+
+    // Task columns, indexed by slot; a free slot has task id 0.
+    private final IntIntMap slotsById = new IntIntMap(INITIAL_CAPACITY);
+    private int[] taskIds = new int[INITIAL_CAPACITY];
+    private int[] owners = new int[INITIAL_CAPACITY];
+    private byte[] statuses = new byte[INITIAL_CAPACITY];
+    private long[] createdAt = new long[INITIAL_CAPACITY];
+    private long[] completedAt = new long[INITIAL_CAPACITY];
+    private long[] dueDays = new long[INITIAL_CAPACITY];
+    // The owner's version when the task last changed; there is no updated_at, nothing here reads it.
+    private long[] versions = new long[INITIAL_CAPACITY];
+    private String[] titles = new String[INITIAL_CAPACITY];
+    private String[] notes = new String[INITIAL_CAPACITY];
+    private String[] dueDates = new String[INITIAL_CAPACITY];
+    private int slotCount;
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+
+    public InMemoryTaskStore() {
+        this(() -> Instant.now().getEpochSecond());
+    }
+
+    InMemoryTaskStore(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public User ensureUser(String name) {
+        if (name == null) {
+            throw new IllegalStateException("Failed to create user; name is required");
+        }
+        lock.writeLock().lock();
+        try {
+            User existing = usersByName.get(name);
+            if (existing != null) {
+                return existing;
+            }
+            User user = new User(++lastUserId, name, null, null, null);
+            putUser(user);
+            return user;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<User> findUserByName(String name) {
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(usersByName.get(name));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<User> findUserById(int userId) {
+        lock.readLock().lock();
+        try {
+            return Optional.ofNullable(usersById.get(userId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public User updateProfile(int userId, String displayName, String focusArea, Integer dailyGoal) {
+        lock.writeLock().lock();
+        try {
+            User user = usersById.get(userId);
+            if (user == null) {
+                throw new IllegalStateException("Failed to reload user profile");
+            }
+            User updated = new User(user.id(), user.name(),
+                displayName == null || displayName.isBlank() ? null : displayName,
+                focusArea == null || focusArea.isBlank() ? null : focusArea,
+                dailyGoal);
+            putUser(updated);
+            return updated;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Task> fetchTasks(int userId) {
+        lock.readLock().lock();
+        try {
+            UserTasks user = tasksByUser.get(userId);
+            if (user == null) {
+                return new ArrayList<>();
+            }
+            SlotList todo = user.byStatus[TaskStatus.TODO.ordinal()];
+            SlotList doing = user.byStatus[TaskStatus.DOING.ordinal()];
+            List<Task> tasks = new ArrayList<>(user.all.size);
+            int i = 0;
+            int j = 0;
+            while (i < todo.size || j < doing.size) {
+                boolean takeTodo = j == doing.size
+                    || (i < todo.size && compareSlots(todo.slots[i], doing.slots[j]) < 0);
+                tasks.add(toTask(takeTodo ? todo.slots[i++] : doing.slots[j++]));
+            }
+            addAll(user.byStatus[TaskStatus.DONE.ordinal()], tasks);
+            return tasks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Task> fetchTasksByStatus(int userId, TaskStatus status) {
+        lock.readLock().lock();
+        try {
+            List<Task> tasks = new ArrayList<>();
+            UserTasks user = tasksByUser.get(userId);
+            if (user != null) {
+                addAll(user.byStatus[status.ordinal()], tasks);
+            }
+            return tasks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Board fetchBoard(int userId) {
+        lock.readLock().lock();
+        try {
+            List<Task> todo = new ArrayList<>();
+            List<Task> doing = new ArrayList<>();
+            List<Task> done = new ArrayList<>();
+            UserTasks user = tasksByUser.get(userId);
+            if (user != null) {
+                addAll(user.byStatus[TaskStatus.TODO.ordinal()], todo);
+                addAll(user.byStatus[TaskStatus.DOING.ordinal()], doing);
+                addAll(user.byStatus[TaskStatus.DONE.ordinal()], done);
+            }
+            return new Board(todo, doing, done, stats(user));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Task> fetchTasksAfter(int userId, Task after, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        lock.readLock().lock();
+        try {
+            List<Task> page = new ArrayList<>(limit);
+            UserTasks user = tasksByUser.get(userId);
+            if (user == null) {
+                return page;
+            }
+            int start = 0;
+            if (after != null) {
+                long created = parseTimestamp(after.createdAt());
+                start = lowerBound(user.all, after.dueDate(), created, after.id());
+                if (start < user.all.size && taskIds[user.all.slots[start]] == after.id()) {
+                    start++;
+                }
+            }
+            for (int i = start; i < user.all.size && page.size() < limit; i++) {
+                page.add(toTask(user.all.slots[i]));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Task> fetchOverdueTasks(int userId, LocalDate today) {
+        long day = today.toEpochDay();
+        return fetchByDueDay(userId, slot -> statuses[slot] != TaskStatus.DONE.ordinal() && dueDays[slot] < day,
+            Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Task> fetchTasksDueBetween(int userId, LocalDate from, LocalDate to) {
+        long first = from.toEpochDay();
+        long last = to.toEpochDay();
+        return fetchByDueDay(userId, slot -> dueDays[slot] >= first && dueDays[slot] <= last, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public List<Task> fetchNextDueTasks(int userId, LocalDate from, int limit) {
+        long first = from.toEpochDay();
+        return fetchByDueDay(userId, slot -> statuses[slot] != TaskStatus.DONE.ordinal() && dueDays[slot] >= first,
+            limit);
+    }
+
+    // Every query word must match a word of the title or notes, the last one also as a prefix.
+    // Unlike the SQLite store there is no relevance ranking: matches come back in board order.
+    @Override
+    public List<Task> searchTasks(int userId, String query, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Search limit must be positive");
+        }
+        List<String> words = query == null ? List.of() : words(query);
+        List<Task> tasks = new ArrayList<>();
+        if (words.isEmpty()) {
+            return tasks;
+        }
+        lock.readLock().lock();
+        try {
+            UserTasks user = tasksByUser.get(userId);
+            if (user == null) {
+                return tasks;
+            }
+            for (int i = 0; i < user.all.size && tasks.size() < limit; i++) {
+                int slot = user.all.slots[i];
+                if (matches(slot, words)) {
+                    tasks.add(toTask(slot));
+                }
+            }
+            return tasks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Task addTask(int userId, String title, String notes, String dueDate) {
+        return addTasks(userId, List.of(new NewTask(title, notes, dueDate))).get(0);
+    }
+
+    // All or nothing, like the SQLite store's single transaction.
+    @Override
+    public List<Task> addTasks(int userId, List<NewTask> newTasks) {
+        for (NewTask newTask : newTasks) {
+            if (newTask.title() == null) {
+                throw new IllegalStateException("Failed to add task; title is required");
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            long now = clock.getAsLong();
+            List<Task> added = new ArrayList<>(newTasks.size());
+            for (NewTask newTask : newTasks) {
+                String dueDate = newTask.dueDate() == null || newTask.dueDate().isBlank() ? null : newTask.dueDate();
+                String taskNotes = newTask.notes() == null || newTask.notes().isBlank() ? null : newTask.notes();
+                int slot = insertTask(++lastTaskId, userId, TaskStatus.TODO, now, NOT_COMPLETED,
+                    newTask.title(), taskNotes, dueDate);
+                stamp(slot);
+                added.add(toTask(slot));
+            }
+            return added;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean updateTaskStatus(int userId, int taskId, TaskStatus status) {
+        lock.writeLock().lock();
+        try {
+            return changeStatus(userId, taskId, status);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Boolean> updateStatuses(int userId, List<StatusChange> changes) {
+        lock.writeLock().lock();
+        try {
+            List<Boolean> results = new ArrayList<>(changes.size());
+            for (StatusChange change : changes) {
+                results.add(changeStatus(userId, change.taskId(), change.status()));
+            }
+            return results;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean deleteTask(int userId, int taskId) {
+        lock.writeLock().lock();
+        try {
+            return removeTask(userId, taskId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Boolean> deleteTasks(int userId, List<Integer> taskIds) {
+        lock.writeLock().lock();
+        try {
+            List<Boolean> results = new ArrayList<>(taskIds.size());
+            for (int taskId : taskIds) {
+                results.add(removeTask(userId, taskId));
+            }
+            return results;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public TaskStats fetchStats(int userId) {
+        lock.readLock().lock();
+        try {
+            return stats(tasksByUser.get(userId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Archives in (owner, task id) order, not slot order: a snapshot packs the slots together, so replay
+    // after one lays tasks out differently and still has to hand out the same archive ids. Candidates
+    // are found under the read lock, then moved in batches, taking the write lock once per batch so
+    // readers get in between; a task that changed in between is skipped.
+    @Override
+    public int archiveCompletedTasks(Duration olderThan) {
+        long cutoff = clock.getAsLong() - olderThan.toSeconds();
+        long[] candidates;
+        int count = 0;
+        lock.readLock().lock();
+        try {
+            candidates = new long[16];
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (isArchivable(slot, cutoff)) {
+                    if (count == candidates.length) {
+                        candidates = Arrays.copyOf(candidates, count * 2);
+                    }
+                    candidates[count++] = (long) owners[slot] << 32 | taskIds[slot];
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Arrays.sort(candidates, 0, count);
+        int archived = 0;
+        int next = 0;
+        while (next < count) {
+            lock.writeLock().lock();
+            try {
+                String archivedAt = formatTimestamp(clock.getAsLong());
+                int end = Math.min(count, next + ARCHIVE_BATCH_SIZE);
+                for (; next < end; next++) {
+                    int slot = slotsById.get((int) candidates[next], -1);
+                    if (slot >= 0 && owners[slot] == (int) (candidates[next] >>> 32) && isArchivable(slot, cutoff)) {
+                        archiveSlot(slot, archivedAt);
+                        archived++;
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+        return archived;
+    }
+
+    private boolean isArchivable(int slot, long cutoff) {
+        return taskIds[slot] != 0 && statuses[slot] == TaskStatus.DONE.ordinal() && completedAt[slot] < cutoff;
+    }
+
+    @Override
+    public List<ArchivedTask> fetchArchivedTasks(int userId, ArchivedTask after, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        lock.readLock().lock();
+        try {
+            List<ArchivedTask> page = new ArrayList<>(limit);
+            UserTasks user = tasksByUser.get(userId);
+            if (user == null) {
+                return page;
+            }
+            int index = after == null ? user.archived.size() : archivePosition(user.archived, after);
+            while (--index >= 0 && page.size() < limit) {
+                page.add(user.archived.get(index));
+            }
+            return page;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Optional<Task> restoreTask(int userId, int archivedTaskId) {
+        lock.writeLock().lock();
+        try {
+            UserTasks user = tasksByUser.get(userId);
+            if (user == null) {
+                return Optional.empty();
+            }
+            for (int i = 0; i < user.archived.size(); i++) {
+                ArchivedTask archived = user.archived.get(i);
+                if (archived.id() == archivedTaskId) {
+                    user.archived.remove(i);
+                    int slot = insertTask(++lastTaskId, userId, TaskStatus.DONE, parseTimestamp(archived.createdAt()),
+                        clock.getAsLong(), archived.title(), archived.notes(), archived.dueDate());
+                    stamp(slot);
+                    return Optional.of(toTask(slot));
+                }
+            }
+            return Optional.empty();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public TaskChanges fetchTasksChangedSince(int userId, long version) {
+        lock.readLock().lock();
+        try {
+            UserTasks user = tasksByUser.get(userId);
+            long current = user == null ? 0 : user.version;
+            long compacted = user == null ? 0 : user.compactedVersion;
+            if (version < compacted || version > current) {
+                return new TaskChanges(current, true, fetchTasks(userId), List.of());
+            }
+            if (user == null) {
+                return new TaskChanges(0, false, List.of(), List.of());
+            }
+            List<Integer> changedSlots = new ArrayList<>();
+            for (int i = 0; i < user.all.size; i++) {
+                if (versions[user.all.slots[i]] > version) {
+                    changedSlots.add(user.all.slots[i]);
+                }
+            }
+            changedSlots.sort(Comparator.comparingLong(slot -> versions[slot]));
+            List<Task> changed = new ArrayList<>(changedSlots.size());
+            for (int slot : changedSlots) {
+                changed.add(toTask(slot));
+            }
+            List<Integer> deleted = new ArrayList<>();
+            for (int i = firstTombstoneAfter(user.tombstones, version); i < user.tombstones.size(); i++) {
+                deleted.add(user.tombstones.get(i).taskId());
+            }
+            return new TaskChanges(current, false, changed, deleted);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public int compactTombstones(Duration olderThan) {
+        lock.writeLock().lock();
+        try {
+            long cutoff = clock.getAsLong() - olderThan.toSeconds();
+            int[] dropped = new int[1];
+            tasksByUser.forEachValue(user -> user.tombstones.removeIf(tombstone -> {
+                if (tombstone.deletedAt() >= cutoff) {
+                    return false;
+                }
+                user.compactedVersion = Math.max(user.compactedVersion, tombstone.version());
+                dropped[0]++;
+                return true;
+            }));
+            return dropped[0];
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // The per-user indexes play the role of the SQLite counters; rebuilding re-derives them from the columns.
+    @Override
+    public void rebuildTaskCounters() {
+        lock.writeLock().lock();
+        try {
+            tasksByUser.forEachValue(UserTasks::clearIndexes);
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (taskIds[slot] != 0) {
+                    index(slot);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public List<Integer> verifyTaskCounters() {
+        lock.readLock().lock();
+        try {
+            IntObjectMap<int[]> recounted = new IntObjectMap<>(Math.max(4, tasksByUser.size()));
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (taskIds[slot] != 0) {
+                    int[] counts = recounted.get(owners[slot]);
+                    if (counts == null) {
+                        counts = new int[STATUSES.length];
+                        recounted.put(owners[slot], counts);
+                    }
+                    counts[statuses[slot]]++;
+                }
+            }
+            List<Integer> drifted = new ArrayList<>();
+            tasksByUser.forEachValue(user -> {
+                int[] counts = recounted.get(user.userId);
+                for (int status = 0; status < STATUSES.length; status++) {
+                    if (user.byStatus[status].size != (counts == null ? 0 : counts[status])) {
+                        drifted.add(user.userId);
+                        return;
+                    }
+                }
+            });
+            drifted.sort(null);
+            return drifted;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Holds the read lock for all the reads; the reads must not write to this store.
+    @Override
+    public <T> T readConsistent(Supplier<T> reads) {
+        lock.readLock().lock();
+        try {
+            return reads.get();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Writes the whole store to a temporary file next to the target and moves it into place,
+    // so a crash mid-write never leaves a truncated snapshot behind.
+    public void saveSnapshot(Path path) {
+        lock.readLock().lock();
+        try {
+            Path directory = path.toAbsolutePath().getParent();
+            Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                writeSnapshot(out);
+            } catch (IOException | RuntimeException ex) {
+                Files.deleteIfExists(temporary);
+                throw ex;
+            }
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to save snapshot " + path, ex);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public static InMemoryTaskStore loadSnapshot(Path path) {
+        return loadSnapshot(path, new InMemoryTaskStore());
+    }
+
+    static InMemoryTaskStore loadSnapshot(Path path, InMemoryTaskStore store) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            store.readSnapshot(in);
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to load snapshot " + path, ex);
+        }
+        return store;
+    }
+
+    private void writeSnapshot(DataOutputStream out) throws IOException {
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(SNAPSHOT_VERSION);
+        out.writeInt(lastUserId);
+        out.writeInt(lastTaskId);
+        out.writeInt(lastArchivedId);
+        out.writeInt(usersById.size());
+        List<IOException> failures = new ArrayList<>(1);
+        usersById.forEachValue(user -> {
+            try {
+                out.writeInt(user.id());
+                writeString(out, user.name());
+                writeString(out, user.displayName());
+                writeString(out, user.focusArea());
+                out.writeBoolean(user.dailyGoal() != null);
+                out.writeInt(user.dailyGoal() == null ? 0 : user.dailyGoal());
+            } catch (IOException ex) {
+                failures.add(ex);
+            }
+        });
+        out.writeInt(slotsById.size());
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (taskIds[slot] != 0) {
+                out.writeInt(taskIds[slot]);
+                out.writeInt(owners[slot]);
+                out.writeByte(statuses[slot]);
+                out.writeLong(createdAt[slot]);
+                out.writeLong(completedAt[slot]);
+                out.writeLong(versions[slot]);
+                writeString(out, titles[slot]);
+                writeString(out, notes[slot]);
+                writeString(out, dueDates[slot]);
+            }
+        }
+        out.writeInt(tasksByUser.size());
+        tasksByUser.forEachValue(user -> {
+            try {
+                out.writeInt(user.userId);
+                out.writeLong(user.version);
+                out.writeLong(user.compactedVersion);
+                out.writeInt(user.tombstones.size());
+                for (Tombstone tombstone : user.tombstones) {
+                    out.writeInt(tombstone.taskId());
+                    out.writeLong(tombstone.version());
+                    out.writeLong(tombstone.deletedAt());
+                }
+                out.writeInt(user.archived.size());
+                for (ArchivedTask archived : user.archived) {
+                    out.writeInt(archived.id());
+                    writeString(out, archived.title());
+                    writeString(out, archived.notes());
+                    writeString(out, archived.dueDate());
+                    writeString(out, archived.createdAt());
+                    writeString(out, archived.completedAt());
+                    writeString(out, archived.archivedAt());
+                }
+            } catch (IOException ex) {
+                failures.add(ex);
+            }
+        });
+        if (!failures.isEmpty()) {
+            throw failures.get(0);
+        }
+    }
+
+    private void readSnapshot(DataInputStream in) throws IOException {
+        if (in.readInt() != SNAPSHOT_MAGIC) {
+            throw new IOException("Not a task store snapshot");
+        }
+        int version = in.readInt();
+        // Version 1 predates row versions. Like migration 8 does for SQLite rows, its tasks load at
+        // version 1 and so do their owners, so a change feed read from version 0 still returns them.
+        if (version != 1 && version != SNAPSHOT_VERSION) {
+            throw new IOException("Unsupported snapshot version " + version);
+        }
+        lastUserId = in.readInt();
+        lastTaskId = in.readInt();
+        lastArchivedId = in.readInt();
+        int users = in.readInt();
+        for (int i = 0; i < users; i++) {
+            int id = in.readInt();
+            String name = readString(in);
+            String displayName = readString(in);
+            String focusArea = readString(in);
+            boolean hasGoal = in.readBoolean();
+            int goal = in.readInt();
+            putUser(new User(id, name, displayName, focusArea, hasGoal ? goal : null));
+        }
+        int tasks = in.readInt();
+        for (int i = 0; i < tasks; i++) {
+            int id = in.readInt();
+            int owner = in.readInt();
+            TaskStatus status = STATUSES[in.readByte()];
+            long created = in.readLong();
+            long completed = in.readLong();
+            long taskVersion = version == 1 ? 1 : in.readLong();
+            int slot = insertTask(id, owner, status, created, completed, readString(in), readString(in), readString(in));
+            versions[slot] = taskVersion;
+            if (version == 1) {
+                userTasks(owner).version = 1;
+            }
+        }
+        int archiveOwners = in.readInt();
+        for (int i = 0; i < archiveOwners; i++) {
+            UserTasks user = userTasks(in.readInt());
+            if (version > 1) {
+                user.version = in.readLong();
+                user.compactedVersion = in.readLong();
+                int tombstones = in.readInt();
+                for (int j = 0; j < tombstones; j++) {
+                    user.tombstones.add(new Tombstone(in.readInt(), in.readLong(), in.readLong()));
+                }
+            }
+            int count = in.readInt();
+            for (int j = 0; j < count; j++) {
+                user.archived.add(new ArchivedTask(in.readInt(), readString(in), readString(in), readString(in),
+                    readString(in), readString(in), readString(in)));
+            }
+        }
+    }
+
+    private void putUser(User user) {
+        User previous = usersById.get(user.id());
+        if (previous != null) {
+            usersByName.remove(previous.name());
+        }
+        usersById.put(user.id(), user);
+        usersByName.put(user.name(), user);
+    }
+
+    private UserTasks userTasks(int userId) {
+        UserTasks user = tasksByUser.get(userId);
+        if (user == null) {
+            user = new UserTasks(userId);
+            tasksByUser.put(userId, user);
+        }
+        return user;
+    }
+
+    private int insertTask(int taskId, int userId, TaskStatus status, long created, long completed,
+                           String title, String taskNotes, String dueDate) {
+        int slot = allocateSlot();
+        taskIds[slot] = taskId;
+        owners[slot] = userId;
+        statuses[slot] = (byte) status.ordinal();
+        createdAt[slot] = created;
+        completedAt[slot] = status == TaskStatus.DONE && completed == NOT_COMPLETED
+            ? clock.getAsLong()
+            : completed;
+        titles[slot] = title;
+        notes[slot] = taskNotes;
+        dueDates[slot] = dueDate;
+        Long dueDay = DueDates.toEpochDay(dueDate);
+        dueDays[slot] = dueDay == null ? NO_DUE_DAY : dueDay;
+        slotsById.put(taskId, slot);
+        index(slot);
+        return slot;
+    }
+
+    private void index(int slot) {
+        UserTasks user = userTasks(owners[slot]);
+        insertSorted(user.all, slot);
+        insertSorted(user.byStatus[statuses[slot]], slot);
+    }
+
+    private void stamp(int slot) {
+        versions[slot] = ++tasksByUser.get(owners[slot]).version;
+    }
+
+    private boolean changeStatus(int userId, int taskId, TaskStatus status) {
+        int slot = slotsById.get(taskId, -1);
+        if (slot < 0 || owners[slot] != userId) {
+            return false;
+        }
+        int previous = statuses[slot];
+        if (previous == status.ordinal()) {
+            return true;
+        }
+        UserTasks user = tasksByUser.get(userId);
+        removeSorted(user.byStatus[previous], slot);
+        statuses[slot] = (byte) status.ordinal();
+        insertSorted(user.byStatus[status.ordinal()], slot);
+        versions[slot] = ++user.version;
+        if (status == TaskStatus.DONE) {
+            completedAt[slot] = clock.getAsLong();
+        } else if (previous == TaskStatus.DONE.ordinal()) {
+            completedAt[slot] = NOT_COMPLETED;
+        }
+        return true;
+    }
+
+    private boolean removeTask(int userId, int taskId) {
+        int slot = slotsById.get(taskId, -1);
+        if (slot < 0 || owners[slot] != userId) {
+            return false;
+        }
+        UserTasks user = tasksByUser.get(userId);
+        removeSorted(user.all, slot);
+        removeSorted(user.byStatus[statuses[slot]], slot);
+        user.tombstones.add(new Tombstone(taskId, ++user.version, clock.getAsLong()));
+        slotsById.remove(taskId);
+        releaseSlot(slot);
+        return true;
+    }
+
+    private void archiveSlot(int slot, String archivedAt) {
+        int userId = owners[slot];
+        ArchivedTask archived = new ArchivedTask(++lastArchivedId, titles[slot], notes[slot], dueDates[slot],
+            formatTimestamp(createdAt[slot]), formatTimestamp(completedAt[slot]), archivedAt);
+        removeTask(userId, taskIds[slot]);
+        List<ArchivedTask> history = userTasks(userId).archived;
+        history.add(archivePosition(history, archived), archived);
+    }
+
+    // Index of the first archived task that sorts at or after the given one by (completed_at, id).
+    private static int archivePosition(List<ArchivedTask> history, ArchivedTask key) {
+        Comparator<ArchivedTask> order = Comparator.comparing(ArchivedTask::completedAt).thenComparingInt(ArchivedTask::id);
+        int low = 0;
+        int high = history.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (order.compare(history.get(middle), key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Index of the first tombstone newer than the given version; tombstones are kept in version order.
+    private static int firstTombstoneAfter(List<Tombstone> tombstones, long version) {
+        int low = 0;
+        int high = tombstones.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (tombstones.get(middle).version() <= version) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private List<Task> fetchByDueDay(int userId, IntPredicate filter, int limit) {
+        lock.readLock().lock();
+        try {
+            UserTasks user = tasksByUser.get(userId);
+            if (user == null) {
+                return new ArrayList<>();
+            }
+            int[] matches = new int[user.all.size];
+            int count = 0;
+            for (int i = 0; i < user.all.size; i++) {
+                int slot = user.all.slots[i];
+                if (dueDays[slot] != NO_DUE_DAY && filter.test(slot)) {
+                    matches[count++] = slot;
+                }
+            }
+            Integer[] byDay = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                byDay[i] = matches[i];
+            }
+            Arrays.sort(byDay, Comparator.<Integer>comparingLong(slot -> dueDays[slot])
+                .thenComparingLong(slot -> createdAt[slot])
+                .thenComparingInt(slot -> taskIds[slot]));
+            List<Task> tasks = new ArrayList<>(Math.min(count, limit));
+            for (int i = 0; i < count && tasks.size() < limit; i++) {
+                tasks.add(toTask(byDay[i]));
+            }
+            return tasks;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private boolean matches(int slot, List<String> queryWords) {
+        List<String> taskWords = words(titles[slot]);
+        if (notes[slot] != null) {
+            taskWords.addAll(words(notes[slot]));
+        }
+        for (int i = 0; i < queryWords.size(); i++) {
+            String word = queryWords.get(i);
+            boolean prefix = i == queryWords.size() - 1;
+            boolean found = false;
+            for (String taskWord : taskWords) {
+                if (prefix ? taskWord.startsWith(word) : taskWord.equals(word)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Lower-cased runs of letters and digits, close to FTS5's default tokenizer.
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    private TaskStats stats(UserTasks user) {
+        if (user == null) {
+            return new TaskStats(0, 0);
+        }
+        int archived = user.archived.size();
+        return new TaskStats(user.all.size + archived, user.byStatus[TaskStatus.DONE.ordinal()].size + archived);
+    }
+
+    private void addAll(SlotList list, List<Task> tasks) {
+        for (int i = 0; i < list.size; i++) {
+            tasks.add(toTask(list.slots[i]));
+        }
+    }
+
+    private Task toTask(int slot) {
+        TaskStatus status = STATUSES[statuses[slot]];
+        return new Task(taskIds[slot], titles[slot], notes[slot], dueDates[slot], status == TaskStatus.DONE,
+            formatTimestamp(createdAt[slot]), status);
+    }
+
+    private int compareSlots(int left, int right) {
+        return compareKey(left, dueDates[right], createdAt[right], taskIds[right]);
+    }
+
+    // Board order: due date with missing dates first, then creation time, then id.
+    private int compareKey(int slot, String dueDate, long created, int taskId) {
+        String slotDueDate = dueDates[slot];
+        if (slotDueDate == null ? dueDate != null : dueDate == null) {
+            return slotDueDate == null ? -1 : 1;
+        }
+        if (slotDueDate != null) {
+            int byDueDate = slotDueDate.compareTo(dueDate);
+            if (byDueDate != 0) {
+                return byDueDate;
+            }
+        }
+        int byCreated = Long.compare(createdAt[slot], created);
+        return byCreated != 0 ? byCreated : Integer.compare(taskIds[slot], taskId);
+    }
+
+    private int lowerBound(SlotList list, String dueDate, long created, int taskId) {
+        int low = 0;
+        int high = list.size;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (compareKey(list.slots[middle], dueDate, created, taskId) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void insertSorted(SlotList list, int slot) {
+        list.insert(lowerBound(list, dueDates[slot], createdAt[slot], taskIds[slot]), slot);
+    }
+
+    private void removeSorted(SlotList list, int slot) {
+        int index = lowerBound(list, dueDates[slot], createdAt[slot], taskIds[slot]);
+        if (index < list.size && list.slots[index] == slot) {
+            list.remove(index);
+        }
+    }
+
+    private int allocateSlot() {
+        if (freeCount > 0) {
+            return freeSlots[--freeCount];
+        }
+        if (slotCount == taskIds.length) {
+            int capacity = taskIds.length + (taskIds.length >> 1);
+            taskIds = Arrays.copyOf(taskIds, capacity);
+            owners = Arrays.copyOf(owners, capacity);
+            statuses = Arrays.copyOf(statuses, capacity);
+            createdAt = Arrays.copyOf(createdAt, capacity);
+            completedAt = Arrays.copyOf(completedAt, capacity);
+            dueDays = Arrays.copyOf(dueDays, capacity);
+            versions = Arrays.copyOf(versions, capacity);
+            titles = Arrays.copyOf(titles, capacity);
+            notes = Arrays.copyOf(notes, capacity);
+            dueDates = Arrays.copyOf(dueDates, capacity);
+        }
+        return slotCount++;
+    }
+
+    private void releaseSlot(int slot) {
+        taskIds[slot] = 0;
+        titles[slot] = null;
+        notes[slot] = null;
+        dueDates[slot] = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+    }
+
+    // Hand-rolled equivalent of TIMESTAMP.format; every Task read goes through here.
+    private static String formatTimestamp(long epochSecond) {
+        LocalDateTime time = LocalDateTime.ofEpochSecond(epochSecond, 0, ZoneOffset.UTC);
+        char[] text = "0000-00-00 00:00:00".toCharArray();
+        writeDigits(text, 0, 4, time.getYear());
+        writeDigits(text, 5, 2, time.getMonthValue());
+        writeDigits(text, 8, 2, time.getDayOfMonth());
+        writeDigits(text, 11, 2, time.getHour());
+        writeDigits(text, 14, 2, time.getMinute());
+        writeDigits(text, 17, 2, time.getSecond());
+        return new String(text);
+    }
+
+    private static void writeDigits(char[] text, int offset, int width, int value) {
+        for (int i = offset + width - 1; i >= offset; i--) {
+            text[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+    }
+
+    private static long parseTimestamp(String timestamp) {
+        return LocalDateTime.parse(timestamp, TIMESTAMP).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static final class UserTasks {
+        private final int userId;
+        private final SlotList all = new SlotList();
+        private final SlotList[] byStatus = new SlotList[STATUSES.length];
+        // Ordered by (completed_at, id), oldest first.
+        private final List<ArchivedTask> archived = new ArrayList<>();
+        // Deleted task ids in version order, until compacted.
+        private final List<Tombstone> tombstones = new ArrayList<>();
+        private long version;
+        private long compactedVersion;
+
+        private UserTasks(int userId) {
+            this.userId = userId;
+            for (int i = 0; i < byStatus.length; i++) {
+                byStatus[i] = new SlotList();
+            }
+        }
+
+        private void clearIndexes() {
+            all.size = 0;
+            for (SlotList list : byStatus) {
+                list.size = 0;
+            }
+        }
+    }
+
+    private record Tombstone(int taskId, long version, long deletedAt) {
+    }
+
+    // Growable int array of slots kept in board order by the store.
+    private static final class SlotList {
+        private int[] slots = new int[8];
+        private int size;
+
+        private void insert(int index, int slot) {
+            if (size == slots.length) {
+                slots = Arrays.copyOf(slots, size * 2);
+            }
+            System.arraycopy(slots, index, slots, index + 1, size - index);
+            slots[index] = slot;
+            size++;
+        }
+
+        private void remove(int index) {
+            System.arraycopy(slots, index + 1, slots, index, size - index - 1);
+            size--;
+        }
+    }
+}
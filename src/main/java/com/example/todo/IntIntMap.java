@@ -0,0 +1,112 @@
+package com.example.todo;
+
+import java.util.Arrays;
+
+// Open-addressing int-to-int hash map with linear probing; no boxing and one pair of arrays for the
+// whole table. Keys must be positive (0 marks an empty slot); removal shifts the probe chain back
+// instead of leaving tombstones.
+final class IntIntMap {
+    private static final int EMPTY = 0;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+
+    IntIntMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2) - 1) << 1;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // Returns the value for the key, or missing when the key is absent.
+    int get(int key, int missing) {
+        int index = indexOf(key);
+        return index < 0 ? missing : values[index];
+    }
+
+    void put(int key, int value) {
+        if (key <= EMPTY) {
+            throw new IllegalArgumentException("Keys must be positive: " + key);
+        }
+        int index = mix(key) & mask;
+        while (keys[index] != EMPTY) {
+            if (keys[index] == key) {
+                values[index] = value;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        if (++size * 2 > keys.length) {
+            resize(keys.length * 2);
+        }
+    }
+
+    boolean remove(int key) {
+        int index = indexOf(key);
+        if (index < 0) {
+            return false;
+        }
+        // Backward-shift deletion: pull later entries of the probe chain into the gap.
+        int gap = index;
+        int next = (gap + 1) & mask;
+        while (keys[next] != EMPTY) {
+            int home = mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = EMPTY;
+        size--;
+        return true;
+    }
+
+    void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    private int indexOf(int key) {
+        if (key <= EMPTY) {
+            return -1;
+        }
+        int index = mix(key) & mask;
+        while (keys[index] != EMPTY) {
+            if (keys[index] == key) {
+                return index;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    // Sequential ids would otherwise fill one run of the table; the multiplier spreads them out.
+    private static int mix(int key) {
+        int hash = key * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,467 @@
+package com.example.todo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Event-sourced TaskStore: every change is appended to a TaskJournal as a compact binary event and
+// then applied to an InMemoryTaskStore, which answers all reads. The directory holds one generation:
+// snapshot-N.bin, the state when the generation began (absent for generation 0), and journal-N.log,
+// every event since. Opening loads the snapshot and replays the journal; after snapshotEvery events,
+// or once the journal grows past MAX_JOURNAL_BYTES, the state becomes snapshot N+1 and the old
+// generation is deleted, which keeps replay short.
+// Events carry their own time and ids are handed out in event order, so replay rebuilds the same
+// tasks with the same ids and timestamps. A change that fails is still journaled; it fails again on
+// replay and changes nothing either time.
+public final class JournaledTaskStore implements TaskStore, AutoCloseable {
+    private static final int DEFAULT_SNAPSHOT_EVERY = 100_000;
+    private static final int MAX_JOURNAL_BYTES = 256 * 1024 * 1024;
+    private static final Pattern GENERATION_FILE = Pattern.compile("(snapshot|journal)-(\\d+)\\.(bin|log)");
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+
+    private static final byte USER_CREATED = 1;
+    private static final byte PROFILE_UPDATED = 2;
+    private static final byte TASKS_ADDED = 3;
+    private static final byte STATUSES_UPDATED = 4;
+    private static final byte TASKS_DELETED = 5;
+    private static final byte TASKS_ARCHIVED = 6;
+    private static final byte TASK_RESTORED = 7;
+    private static final byte TOMBSTONES_COMPACTED = 8;
+
+    private final Path directory;
+    private final int snapshotEvery;
+    private final Object writeLock = new Object();
+    // The time of the event being applied; the state reads it through its clock.
+    private long eventTime;
+    private final InMemoryTaskStore state = new InMemoryTaskStore(() -> eventTime);
+    private TaskJournal journal;
+    private long generation;
+    private int eventsSinceSnapshot;
+
+    private JournaledTaskStore(Path directory, int snapshotEvery) {
+        this.directory = directory;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    public static JournaledTaskStore open(Path directory) {
+        return open(directory, DEFAULT_SNAPSHOT_EVERY);
+    }
+
+    public static JournaledTaskStore open(Path directory, int snapshotEvery) {
+        if (snapshotEvery < 1) {
+            throw new IllegalArgumentException("Snapshot interval must be positive");
+        }
+        JournaledTaskStore store = new JournaledTaskStore(directory, snapshotEvery);
+        try {
+            Files.createDirectories(directory);
+            store.recover();
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to open task journal in " + directory, ex);
+        }
+        return store;
+    }
+
+    @Override
+    public User ensureUser(String name) {
+        Optional<User> existing = state.findUserByName(name);
+        if (existing.isPresent()) {
+            return existing.get();
+        }
+        return record(new Event(USER_CREATED).string(name));
+    }
+
+    @Override
+    public Optional<User> findUserByName(String name) {
+        return state.findUserByName(name);
+    }
+
+    @Override
+    public Optional<User> findUserById(int userId) {
+        return state.findUserById(userId);
+    }
+
+    @Override
+    public User updateProfile(int userId, String displayName, String focusArea, Integer dailyGoal) {
+        return record(new Event(PROFILE_UPDATED).integer(userId).string(displayName).string(focusArea)
+            .optionalInteger(dailyGoal));
+    }
+
+    @Override
+    public List<Task> fetchTasks(int userId) {
+        return state.fetchTasks(userId);
+    }
+
+    @Override
+    public List<Task> fetchTasksByStatus(int userId, TaskStatus status) {
+        return state.fetchTasksByStatus(userId, status);
+    }
+
+    @Override
+    public Board fetchBoard(int userId) {
+        return state.fetchBoard(userId);
+    }
+
+    @Override
+    public List<Task> fetchTasksAfter(int userId, Task after, int limit) {
+        return state.fetchTasksAfter(userId, after, limit);
+    }
+
+    @Override
+    public List<Task> fetchOverdueTasks(int userId, LocalDate today) {
+        return state.fetchOverdueTasks(userId, today);
+    }
+
+    @Override
+    public List<Task> fetchTasksDueBetween(int userId, LocalDate from, LocalDate to) {
+        return state.fetchTasksDueBetween(userId, from, to);
+    }
+
+    @Override
+    public List<Task> fetchNextDueTasks(int userId, LocalDate from, int limit) {
+        return state.fetchNextDueTasks(userId, from, limit);
+    }
+
+    @Override
+    public List<Task> searchTasks(int userId, String query, int limit) {
+        return state.searchTasks(userId, query, limit);
+    }
+
+    @Override
+    public Task addTask(int userId, String title, String notes, String dueDate) {
+        return addTasks(userId, List.of(new NewTask(title, notes, dueDate))).get(0);
+    }
+
+    @Override
+    public List<Task> addTasks(int userId, List<NewTask> newTasks) {
+        Event event = new Event(TASKS_ADDED).integer(userId).integer(newTasks.size());
+        for (NewTask newTask : newTasks) {
+            event.string(newTask.title()).string(newTask.notes()).string(newTask.dueDate());
+        }
+        return record(event);
+    }
+
+    @Override
+    public boolean updateTaskStatus(int userId, int taskId, TaskStatus status) {
+        return updateStatuses(userId, List.of(new StatusChange(taskId, status))).get(0);
+    }
+
+    @Override
+    public List<Boolean> updateStatuses(int userId, List<StatusChange> changes) {
+        Event event = new Event(STATUSES_UPDATED).integer(userId).integer(changes.size());
+        for (StatusChange change : changes) {
+            event.integer(change.taskId()).status(change.status());
+        }
+        return record(event);
+    }
+
+    @Override
+    public boolean deleteTask(int userId, int taskId) {
+        return deleteTasks(userId, List.of(taskId)).get(0);
+    }
+
+    @Override
+    public List<Boolean> deleteTasks(int userId, List<Integer> taskIds) {
+        Event event = new Event(TASKS_DELETED).integer(userId).integer(taskIds.size());
+        for (int taskId : taskIds) {
+            event.integer(taskId);
+        }
+        return record(event);
+    }
+
+    @Override
+    public TaskStats fetchStats(int userId) {
+        return state.fetchStats(userId);
+    }
+
+    @Override
+    public int archiveCompletedTasks(Duration olderThan) {
+        return record(new Event(TASKS_ARCHIVED).longValue(olderThan.toSeconds()));
+    }
+
+    @Override
+    public List<ArchivedTask> fetchArchivedTasks(int userId, ArchivedTask after, int limit) {
+        return state.fetchArchivedTasks(userId, after, limit);
+    }
+
+    @Override
+    public Optional<Task> restoreTask(int userId, int archivedTaskId) {
+        return record(new Event(TASK_RESTORED).integer(userId).integer(archivedTaskId));
+    }
+
+    @Override
+    public TaskChanges fetchTasksChangedSince(int userId, long version) {
+        return state.fetchTasksChangedSince(userId, version);
+    }
+
+    @Override
+    public int compactTombstones(Duration olderThan) {
+        return record(new Event(TOMBSTONES_COMPACTED).longValue(olderThan.toSeconds()));
+    }
+
+    // The indexes are derived from the task columns, so rebuilding them is not an event.
+    @Override
+    public void rebuildTaskCounters() {
+        state.rebuildTaskCounters();
+    }
+
+    @Override
+    public List<Integer> verifyTaskCounters() {
+        return state.verifyTaskCounters();
+    }
+
+    @Override
+    public <T> T readConsistent(Supplier<T> reads) {
+        return state.readConsistent(reads);
+    }
+
+    // Starts a new generation now instead of waiting for the interval.
+    public void snapshot() {
+        synchronized (writeLock) {
+            rotate();
+        }
+    }
+
+    // Forces the journal to disk; until then an OS crash may lose the latest events.
+    public void sync() {
+        synchronized (writeLock) {
+            journal.force();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (writeLock) {
+            try {
+                journal.close();
+            } catch (IOException ex) {
+                throw new IllegalStateException("Failed to close task journal", ex);
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        long latest = -1;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                Matcher matcher = GENERATION_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches() && matcher.group(1).equals("snapshot")) {
+                    latest = Math.max(latest, Long.parseLong(matcher.group(2)));
+                }
+            }
+        }
+        generation = Math.max(latest, 0);
+        if (latest >= 0) {
+            InMemoryTaskStore.loadSnapshot(snapshotPath(generation), state);
+        }
+        journal = TaskJournal.open(journalPath(generation), this::replay);
+        deleteOtherGenerations();
+    }
+
+    // Files from generations before the current one, or from a snapshot that never finished.
+    private void deleteOtherGenerations() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                Matcher matcher = GENERATION_FILE.matcher(name);
+                boolean stale = matcher.matches() ? Long.parseLong(matcher.group(2)) != generation
+                    : name.startsWith("snapshot-") && name.endsWith(".tmp");
+                if (stale) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private void replay(ByteBuffer event) {
+        try {
+            apply(event);
+        } catch (IllegalStateException ex) {
+            // Failed the same way when it was first recorded.
+        }
+        eventsSinceSnapshot++;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T record(Event event) {
+        byte[] bytes = event.toByteArray();
+        synchronized (writeLock) {
+            try {
+                journal.append(bytes);
+            } catch (IOException ex) {
+                throw new IllegalStateException("Failed to append to task journal", ex);
+            }
+            eventsSinceSnapshot++;
+            T result = (T) apply(ByteBuffer.wrap(bytes));
+            if (eventsSinceSnapshot >= snapshotEvery || journal.size() >= MAX_JOURNAL_BYTES) {
+                rotate();
+            }
+            return result;
+        }
+    }
+
+    private Object apply(ByteBuffer event) {
+        byte type = event.get();
+        eventTime = event.getLong();
+        int userId;
+        int count;
+        switch (type) {
+            case USER_CREATED:
+                return state.ensureUser(readString(event));
+            case PROFILE_UPDATED:
+                userId = event.getInt();
+                String displayName = readString(event);
+                String focusArea = readString(event);
+                boolean hasGoal = event.get() != 0;
+                int dailyGoal = event.getInt();
+                return state.updateProfile(userId, displayName, focusArea, hasGoal ? dailyGoal : null);
+            case TASKS_ADDED:
+                userId = event.getInt();
+                count = event.getInt();
+                List<NewTask> newTasks = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    newTasks.add(new NewTask(readString(event), readString(event), readString(event)));
+                }
+                return state.addTasks(userId, newTasks);
+            case STATUSES_UPDATED:
+                userId = event.getInt();
+                count = event.getInt();
+                List<StatusChange> changes = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    changes.add(new StatusChange(event.getInt(), STATUSES[event.get()]));
+                }
+                return state.updateStatuses(userId, changes);
+            case TASKS_DELETED:
+                userId = event.getInt();
+                count = event.getInt();
+                List<Integer> taskIds = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    taskIds.add(event.getInt());
+                }
+                return state.deleteTasks(userId, taskIds);
+            case TASKS_ARCHIVED:
+                return state.archiveCompletedTasks(Duration.ofSeconds(event.getLong()));
+            case TASK_RESTORED:
+                userId = event.getInt();
+                return state.restoreTask(userId, event.getInt());
+            case TOMBSTONES_COMPACTED:
+                return state.compactTombstones(Duration.ofSeconds(event.getLong()));
+            default:
+                throw new IllegalArgumentException("Unknown journal event type " + type);
+        }
+    }
+
+    // The snapshot is complete on disk before the new journal exists, so a crash at any point
+    // leaves one whole generation to open.
+    private void rotate() {
+        long next = generation + 1;
+        try {
+            journal.force();
+            state.saveSnapshot(snapshotPath(next));
+            Files.deleteIfExists(journalPath(next));
+            TaskJournal nextJournal = TaskJournal.open(journalPath(next), this::replay);
+            journal.close();
+            journal = nextJournal;
+            generation = next;
+            eventsSinceSnapshot = 0;
+            Files.deleteIfExists(journalPath(next - 1));
+            Files.deleteIfExists(snapshotPath(next - 1));
+        } catch (IOException ex) {
+            throw new IllegalStateException("Failed to snapshot task journal", ex);
+        }
+    }
+
+    private Path snapshotPath(long generation) {
+        return directory.resolve("snapshot-" + generation + ".bin");
+    }
+
+    private Path journalPath(long generation) {
+        return directory.resolve("journal-" + generation + ".log");
+    }
+
+    private static String readString(ByteBuffer event) {
+        int length = event.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] encoded = new byte[length];
+        event.get(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    // Event layout: type byte, epoch seconds, then the fields; strings are a byte length (-1 for
+    // null) followed by UTF-8.
+    private static final class Event {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        private Event(byte type) {
+            write(() -> {
+                out.writeByte(type);
+                out.writeLong(Instant.now().getEpochSecond());
+            });
+        }
+
+        private Event integer(int value) {
+            return write(() -> out.writeInt(value));
+        }
+
+        private Event optionalInteger(Integer value) {
+            return write(() -> {
+                out.writeBoolean(value != null);
+                out.writeInt(value == null ? 0 : value);
+            });
+        }
+
+        private Event longValue(long value) {
+            return write(() -> out.writeLong(value));
+        }
+
+        private Event status(TaskStatus status) {
+            return write(() -> out.writeByte(status.ordinal()));
+        }
+
+        private Event string(String value) {
+            return write(() -> {
+                if (value == null) {
+                    out.writeInt(-1);
+                    return;
+                }
+                byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(encoded.length);
+                out.write(encoded);
+            });
+        }
+
+        private byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+
+        private Event write(Field field) {
+            try {
+                field.write();
+            } catch (IOException ex) {
+                throw new IllegalStateException("Failed to encode journal event", ex);
+            }
+            return this;
+        }
+    }
+
+    @FunctionalInterface
+    private interface Field {
+        void write() throws IOException;
+    }
+}
@@ -0,0 +1,4 @@
+package com.example.todo;
+
+public record NewTask(String title, String notes, String dueDate) {
+}
@@ -0,0 +1,19 @@
+package com.example.todo;
+
+public record PoolStats(
+        int maxSize,
+        int open,
+        int idle,
+        long borrows,
+        long creations,
+        long timeouts,
+        long totalWaitMillis
+) {
+    public int inUse() {
+        return Math.max(0, open - idle);
+    }
+
+    public double averageWaitMillis() {
+        return borrows == 0 ? 0.0 : (double) totalWaitMillis / borrows;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.todo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+// Offline copy of existing databases into a fresh sharded layout. Every user is placed by the hash
+// of their name and given the next id of that shard's stripe; their tasks and archived tasks
+// follow with new ids in the original order. Counters, row versions and the search index are filled by the
+// target's own triggers.
+// Each target shard is written in one transaction, so a failed run leaves the targets empty.
+final class Resharder {
+    private Resharder() {
+    }
+
+    // Returns how many users ended up on each shard.
+    static int[] reshard(List<Database> sources, ShardedDatabase target) {
+        target.initialize();
+        List<Connection> writers = new ArrayList<>(target.shardCount());
+        try {
+            for (Database shard : target.shards()) {
+                Connection writer = shard.connect();
+                writers.add(writer);
+                writer.setAutoCommit(false);
+                requireEmpty(writer);
+            }
+            int[] nextIds = new int[target.shardCount()];
+            int[] users = new int[target.shardCount()];
+            for (int index = 0; index < nextIds.length; index++) {
+                nextIds[index] = index + 1;
+            }
+            for (Database source : sources) {
+                source.readTransaction(() -> {
+                    copyUsers(source, target, writers, nextIds, users);
+                    return null;
+                });
+            }
+            for (Connection writer : writers) {
+                writer.commit();
+            }
+            return users;
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Failed to reshard database", ex);
+        } finally {
+            for (Connection writer : writers) {
+                try {
+                    writer.close();
+                } catch (SQLException ignored) {
+                    // Closing hands the connection back to the pool, which rolls back anything uncommitted.
+                }
+            }
+        }
+    }
+
+    private static void copyUsers(Database source, ShardedDatabase target, List<Connection> writers, int[] nextIds,
+                                  int[] users) {
+        try (Connection reader = source.connectForRead();
+             Statement statement = reader.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT id, name FROM users ORDER BY id")) {
+            while (resultSet.next()) {
+                int oldId = resultSet.getInt("id");
+                int shard = target.shardForName(resultSet.getString("name"));
+                int newId = nextIds[shard];
+                nextIds[shard] += target.shardCount();
+                users[shard]++;
+                Connection writer = writers.get(shard);
+                copyRows(reader, writer, "users", "id", oldId, newId, Set.of());
+                copyRows(reader, writer, "tasks", "user_id", oldId, newId, Set.of("id"));
+                copyRows(reader, writer, "archived_tasks", "user_id", oldId, newId, Set.of("id"));
+                forceFeedReset(writer, newId);
+            }
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Failed to copy users", ex);
+        }
+    }
+
+    // Copies one user's rows of a table, replacing the user column with the new id and leaving the
+    // skipped columns to their defaults. Only columns present on both sides are copied.
+    private static void copyRows(Connection reader, Connection writer, String table, String userColumn, int oldId,
+                                 int newId, Set<String> skipped) throws SQLException {
+        List<String> columns = new ArrayList<>(SchemaMigrations.columns(writer, table));
+        columns.retainAll(SchemaMigrations.columns(reader, table));
+        columns.removeAll(skipped);
+        columns.remove(userColumn);
+        columns.sort(null);
+        String selectList = columns.isEmpty() ? "" : ", " + String.join(", ", columns);
+        String insertSql = "INSERT INTO " + table + "(" + userColumn + selectList + ") VALUES (?"
+            + ", ?".repeat(columns.size()) + ")";
+        String selectSql = "SELECT " + userColumn + selectList + " FROM " + table + " WHERE " + userColumn
+            + " = ? ORDER BY rowid";
+        try (PreparedStatement select = reader.prepareStatement(selectSql);
+             PreparedStatement insert = writer.prepareStatement(insertSql)) {
+            select.setInt(1, oldId);
+            try (ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    insert.setInt(1, newId);
+                    for (int column = 2; column <= columns.size() + 1; column++) {
+                        insert.setObject(column, rows.getObject(column));
+                    }
+                    insert.addBatch();
+                }
+            }
+            insert.executeBatch();
+        }
+    }
+
+    // Task ids change and tombstones stay behind, so change feeds from before the move must start over.
+    private static void forceFeedReset(Connection writer, int userId) throws SQLException {
+        try (PreparedStatement statement = writer.prepareStatement(
+            "UPDATE users SET compacted_version = task_version WHERE id = ?"
+        )) {
+            statement.setInt(1, userId);
+            statement.executeUpdate();
+        }
+    }
+
+    private static void requireEmpty(Connection writer) throws SQLException {
+        try (Statement statement = writer.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT EXISTS (SELECT 1 FROM users)")) {
+            if (resultSet.next() && resultSet.getInt(1) == 1) {
+                throw new SQLException("Target shard already holds users; reshard into empty files");
+            }
+        }
+    }
+}
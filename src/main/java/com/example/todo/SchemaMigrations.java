@@ -0,0 +1,479 @@
+package com.example.todo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// Ordered schema migrations tracked through PRAGMA user_version. Each step runs in its own
+// transaction together with the version bump, so a failed step leaves the previous version intact.
+final class SchemaMigrations {
+    private static final List<Migration> MIGRATIONS = List.of(
+        new Migration(1, "base users and tasks tables", SchemaMigrations::createBaseSchema),
+        new Migration(2, "task indexes for board and list queries", SchemaMigrations::createTaskIndexes),
+        new Migration(3, "keyset index for paging tasks", SchemaMigrations::createTaskKeysetIndex),
+        new Migration(4, "per-user task counters", SchemaMigrations::createTaskCounters),
+        new Migration(5, "typed due_day column", SchemaMigrations::addDueDay),
+        new Migration(6, "full-text index over task titles and notes", SchemaMigrations::createTaskSearch),
+        new Migration(7, "archive table for completed tasks", SchemaMigrations::createTaskArchive),
+        new Migration(8, "row versions and delete tombstones", SchemaMigrations::createTaskVersions),
+        new Migration(9, "full-text index scoped to the task owner", SchemaMigrations::scopeTaskSearchToUser)
+    );
+
+    // Counts every user's hot tasks per status and their archived tasks; shared with
+    // ToDoRepository.verifyTaskCounters().
+    static final String RECOUNT_TASKS_SQL = """
+        SELECT user_id, SUM(hot) AS total, SUM(todo) AS todo, SUM(doing) AS doing, SUM(done) AS done,
+               SUM(archived) AS archived
+        FROM (
+            SELECT user_id,
+                   1 AS hot,
+                   status NOT IN ('DOING', 'DONE') AS todo,
+                   status = 'DOING' AS doing,
+                   status = 'DONE' AS done,
+                   0 AS archived
+            FROM tasks
+            UNION ALL
+            SELECT user_id, 0, 0, 0, 0, 1 FROM archived_tasks
+        )
+        GROUP BY user_id
+        """;
+
+    // Recomputes every user's counters from scratch; shared with ToDoRepository.rebuildTaskCounters().
+    static final String COUNTERS_FROM_TASKS_SQL =
+        "INSERT INTO user_task_counters(user_id, total, todo, doing, done, archived) " + RECOUNT_TASKS_SQL;
+
+    // The counters as first introduced, before there was an archive to count.
+    private static final String INITIAL_COUNTERS_SQL = """
+        INSERT INTO user_task_counters(user_id, total, todo, doing, done)
+        SELECT user_id,
+               COUNT(*),
+               SUM(status NOT IN ('DOING', 'DONE')),
+               SUM(status = 'DOING'),
+               SUM(status = 'DONE')
+        FROM tasks
+        GROUP BY user_id
+        """;
+
+    private SchemaMigrations() {
+    }
+
+    static int latestVersion() {
+        return MIGRATIONS.get(MIGRATIONS.size() - 1).version();
+    }
+
+    static void migrate(Connection connection) throws SQLException {
+        int current = currentVersion(connection);
+        if (current >= latestVersion()) {
+            return;
+        }
+        if (current == 0) {
+            useIncrementalVacuumIfEmpty(connection);
+        }
+        for (Migration migration : MIGRATIONS) {
+            if (migration.version() > current) {
+                apply(connection, migration);
+            }
+        }
+    }
+
+    // auto_vacuum can only change before the first table exists (or through a full VACUUM), so a new,
+    // still empty file is switched to INCREMENTAL here; the VACUUM that makes it stick costs nothing yet.
+    // Only a file at user_version 0 can be empty, so migrated files never run the check.
+    private static void useIncrementalVacuumIfEmpty(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery("SELECT COUNT(*) FROM sqlite_schema")) {
+                if (resultSet.next() && resultSet.getInt(1) > 0) {
+                    return;
+                }
+            }
+            statement.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            statement.execute("VACUUM");
+        }
+    }
+
+    static int currentVersion(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("PRAGMA user_version")) {
+            return resultSet.next() ? resultSet.getInt(1) : 0;
+        }
+    }
+
+    private static void apply(Connection connection, Migration migration) throws SQLException {
+        connection.setAutoCommit(false);
+        try {
+            migration.step().apply(connection);
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("PRAGMA user_version = " + migration.version());
+            }
+            connection.commit();
+        } catch (SQLException | RuntimeException ex) {
+            connection.rollback();
+            throw new SQLException("Migration " + migration.version() + " (" + migration.description() + ") failed", ex);
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+
+    private static void createBaseSchema(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS users (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    name TEXT NOT NULL UNIQUE,
+                    display_name TEXT,
+                    focus_area TEXT,
+                    daily_goal INTEGER
+                )
+                """);
+            statement.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS tasks (
+                    id INTEGER PRIMARY KEY AUTOINCREMENT,
+                    user_id INTEGER NOT NULL,
+                    title TEXT NOT NULL,
+                    notes TEXT,
+                    due_date TEXT,
+                    completed INTEGER NOT NULL DEFAULT 0,
+                    status TEXT NOT NULL DEFAULT 'TODO',
+                    created_at TEXT NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                    FOREIGN KEY(user_id) REFERENCES users(id)
+                )
+                """);
+        }
+        // Databases created before versioning may predate the profile and status columns.
+        Set<String> userColumns = columns(connection, "users");
+        addColumnIfMissing(connection, "users", userColumns, "display_name", "TEXT");
+        addColumnIfMissing(connection, "users", userColumns, "focus_area", "TEXT");
+        addColumnIfMissing(connection, "users", userColumns, "daily_goal", "INTEGER");
+        Set<String> taskColumns = columns(connection, "tasks");
+        addColumnIfMissing(connection, "tasks", taskColumns, "status", "TEXT NOT NULL DEFAULT 'TODO'");
+    }
+
+    // Leading user_id serves every per-user lookup; the trailing columns match the ORDER BY
+    // of fetchBoard/fetchTasksByStatus and fetchTasks so SQLite can skip the sort step.
+    private static void createTaskIndexes(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(
+                "CREATE INDEX IF NOT EXISTS idx_tasks_user_status_due ON tasks(user_id, status, due_date, created_at)"
+            );
+            statement.executeUpdate(
+                "CREATE INDEX IF NOT EXISTS idx_tasks_user_completed_due ON tasks(user_id, completed, due_date, created_at)"
+            );
+        }
+    }
+
+    // The rowid is implicitly the last index column, so this covers the (due_date, created_at, id) key.
+    private static void createTaskKeysetIndex(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(
+                "CREATE INDEX IF NOT EXISTS idx_tasks_user_due_created ON tasks(user_id, due_date, created_at)"
+            );
+        }
+    }
+
+    // Counters are kept exact by triggers, so every write path (single, bulk, or external) updates them.
+    private static void createTaskCounters(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            // Rows written before the status column existed only recorded completion in the completed flag.
+            statement.executeUpdate("UPDATE tasks SET status = 'DONE' WHERE completed = 1 AND status <> 'DONE'");
+            statement.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS user_task_counters (
+                    user_id INTEGER PRIMARY KEY,
+                    total INTEGER NOT NULL DEFAULT 0,
+                    todo INTEGER NOT NULL DEFAULT 0,
+                    doing INTEGER NOT NULL DEFAULT 0,
+                    done INTEGER NOT NULL DEFAULT 0
+                )
+                """);
+            statement.executeUpdate("""
+                CREATE TRIGGER IF NOT EXISTS trg_tasks_counters_insert AFTER INSERT ON tasks
+                BEGIN
+                    INSERT OR IGNORE INTO user_task_counters(user_id) VALUES (NEW.user_id);
+                    UPDATE user_task_counters SET
+                        total = total + 1,
+                        todo = todo + (NEW.status NOT IN ('DOING', 'DONE')),
+                        doing = doing + (NEW.status = 'DOING'),
+                        done = done + (NEW.status = 'DONE')
+                    WHERE user_id = NEW.user_id;
+                END
+                """);
+            statement.executeUpdate("""
+                CREATE TRIGGER IF NOT EXISTS trg_tasks_counters_update AFTER UPDATE OF status, user_id ON tasks
+                BEGIN
+                    UPDATE user_task_counters SET
+                        total = total - 1,
+                        todo = todo - (OLD.status NOT IN ('DOING', 'DONE')),
+                        doing = doing - (OLD.status = 'DOING'),
+                        done = done - (OLD.status = 'DONE')
+                    WHERE user_id = OLD.user_id;
+                    INSERT OR IGNORE INTO user_task_counters(user_id) VALUES (NEW.user_id);
+                    UPDATE user_task_counters SET
+                        total = total + 1,
+                        todo = todo + (NEW.status NOT IN ('DOING', 'DONE')),
+                        doing = doing + (NEW.status = 'DOING'),
+                        done = done + (NEW.status = 'DONE')
+                    WHERE user_id = NEW.user_id;
+                END
+                """);
+            statement.executeUpdate("""
+                CREATE TRIGGER IF NOT EXISTS trg_tasks_counters_delete AFTER DELETE ON tasks
+                BEGIN
+                    UPDATE user_task_counters SET
+                        total = total - 1,
+                        todo = todo - (OLD.status NOT IN ('DOING', 'DONE')),
+                        doing = doing - (OLD.status = 'DOING'),
+                        done = done - (OLD.status = 'DONE')
+                    WHERE user_id = OLD.user_id;
+                END
+                """);
+            statement.executeUpdate("DELETE FROM user_task_counters");
+            statement.executeUpdate(INITIAL_COUNTERS_SQL);
+        }
+    }
+
+    private static void addDueDay(Connection connection) throws SQLException {
+        addColumnIfMissing(connection, "tasks", columns(connection, "tasks"), "due_day", "INTEGER");
+        try (PreparedStatement select = connection.prepareStatement(
+                 "SELECT id, due_date FROM tasks WHERE due_date IS NOT NULL");
+             PreparedStatement update = connection.prepareStatement("UPDATE tasks SET due_day = ? WHERE id = ?");
+             ResultSet resultSet = select.executeQuery()) {
+            while (resultSet.next()) {
+                Long dueDay = DueDates.toEpochDay(resultSet.getString("due_date"));
+                if (dueDay != null) {
+                    update.setLong(1, dueDay);
+                    update.setInt(2, resultSet.getInt("id"));
+                    update.addBatch();
+                }
+            }
+            update.executeBatch();
+        }
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_tasks_user_due_day ON tasks(user_id, due_day, created_at)");
+        }
+    }
+
+    // External-content FTS5 table: it stores only the index and reads titles and notes from tasks.
+    // Triggers keep it in sync with every write, and 'rebuild' indexes rows that already exist.
+    private static void createTaskSearch(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(
+                "CREATE VIRTUAL TABLE IF NOT EXISTS tasks_fts USING fts5(title, notes, content='tasks', content_rowid='id')"
+            );
+            statement.executeUpdate("""
+                CREATE TRIGGER IF NOT EXISTS trg_tasks_fts_insert AFTER INSERT ON tasks
+                BEGIN
+                    INSERT INTO tasks_fts(rowid, title, notes) VALUES (NEW.id, NEW.title, NEW.notes);
+                END
+                """);
+            statement.executeUpdate("""
+                CREATE TRIGGER IF NOT EXISTS trg_tasks_fts_delete AFTER DELETE ON tasks
+                BEGIN
+                    INSERT INTO tasks_fts(tasks_fts, rowid, title, notes) VALUES ('delete', OLD.id, OLD.title, OLD.notes);
+                END
+                """);
+            statement.executeUpdate("""
+                CREATE TRIGGER IF NOT EXISTS trg_tasks_fts_update AFTER UPDATE OF title, notes ON tasks
+                BEGIN
+                    INSERT INTO tasks_fts(tasks_fts, rowid, title, notes) VALUES ('delete', OLD.id, OLD.title, OLD.notes);
+                    INSERT INTO tasks_fts(rowid, title, notes) VALUES (NEW.id, NEW.title, NEW.notes);
+                END
+                """);
+            statement.executeUpdate("INSERT INTO tasks_fts(tasks_fts) VALUES ('rebuild')");
+        }
+    }
+
+    // DONE tasks get a completed_at stamp so the archive job can tell how long they have been done.
+    // Archived rows leave tasks (and with it the counters' hot columns and the search index) and are
+    // counted in user_task_counters.archived instead. Tasks that were already done before this
+    // migration start their archive age now rather than at their creation.
+    private static void createTaskArchive(Connection connection) throws SQLException {
+        addColumnIfMissing(connection, "tasks", columns(connection, "tasks"), "completed_at", "TEXT");
+        addColumnIfMissing(connection, "user_task_counters", columns(connection, "user_task_counters"),
+            "archived", "INTEGER NOT NULL DEFAULT 0");
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate(
+                "UPDATE tasks SET completed_at = CURRENT_TIMESTAMP WHERE status = 'DONE' AND completed_at IS NULL"
+            );
+            statement.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS archived_tasks (
+                    id INTEGER PRIMARY KEY,
+                    user_id INTEGER NOT NULL,
+                    title TEXT NOT NULL,
+                    notes TEXT,
+                    due_date TEXT,
+                    due_day INTEGER,
+                    created_at TEXT NOT NULL,
+                    completed_at TEXT NOT NULL,
+                    archived_at TEXT NOT NULL DEFAULT CURRENT_TIMESTAMP,
+                    FOREIGN KEY(user_id) REFERENCES users(id)
+                )
+                """);
+            statement.executeUpdate(
+                "CREATE INDEX IF NOT EXISTS idx_archived_tasks_user_completed ON archived_tasks(user_id, completed_at)"
+            );
+            statement.executeUpdate(
+                "CREATE INDEX IF NOT EXISTS idx_tasks_done_completed ON tasks(completed_at) WHERE status = 'DONE'"
+            );
+            statement.executeUpdate("""
+                CREATE TRIGGER IF NOT EXISTS trg_tasks_completed_at_insert AFTER INSERT ON tasks
+                WHEN NEW.status = 'DONE' AND NEW.completed_at IS NULL
+                BEGIN
+                    UPDATE tasks SET completed_at = CURRENT_TIMESTAMP WHERE id = NEW.id;
+                END
+                """);
+            statement.executeUpdate("""
+                CREATE TRIGGER IF NOT EXISTS trg_tasks_completed_at_update AFTER UPDATE OF status ON tasks
+                WHEN (NEW.status = 'DONE') <> (OLD.status = 'DONE')
+                BEGIN
+                    UPDATE tasks SET completed_at = CASE WHEN NEW.status = 'DONE' THEN CURRENT_TIMESTAMP END
+                    WHERE id = NEW.id;
+                END
+                """);
+            statement.executeUpdate("""
+                CREATE TRIGGER IF NOT EXISTS trg_archived_tasks_counters_insert AFTER INSERT ON archived_tasks
+                BEGIN
+                    INSERT OR IGNORE INTO user_task_counters(user_id) VALUES (NEW.user_id);
+                    UPDATE user_task_counters SET archived = archived + 1 WHERE user_id = NEW.user_id;
+                END
+                """);
+            statement.executeUpdate("""
+                CREATE TRIGGER IF NOT EXISTS trg_archived_tasks_counters_delete AFTER DELETE ON archived_tasks
+                BEGIN
+                    UPDATE user_task_counters SET archived = archived - 1 WHERE user_id = OLD.user_id;
+                END
+                """);
+            statement.executeUpdate("DELETE FROM user_task_counters");
+            statement.executeUpdate(COUNTERS_FROM_TASKS_SQL);
+        }
+    }
+
+    // users.task_version counts every change to a user's tasks; triggers bump it and stamp the new value
+    // (and updated_at) on the inserted or changed row, or on a tombstone for a deleted one. Archiving
+    // deletes from tasks, so it leaves tombstones too. users.compacted_version is the newest version
+    // whose tombstone may have been compacted away; a change feed older than that must start over.
+    // Existing rows all start at version 1.
+    private static void createTaskVersions(Connection connection) throws SQLException {
+        Set<String> userColumns = columns(connection, "users");
+        addColumnIfMissing(connection, "users", userColumns, "task_version", "INTEGER NOT NULL DEFAULT 0");
+        addColumnIfMissing(connection, "users", userColumns, "compacted_version", "INTEGER NOT NULL DEFAULT 0");
+        Set<String> taskColumns = columns(connection, "tasks");
+        addColumnIfMissing(connection, "tasks", taskColumns, "version", "INTEGER NOT NULL DEFAULT 0");
+        addColumnIfMissing(connection, "tasks", taskColumns, "updated_at", "TEXT");
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("UPDATE tasks SET version = 1, updated_at = created_at");
+            statement.executeUpdate("UPDATE users SET task_version = 1");
+            statement.executeUpdate("""
+                CREATE TABLE IF NOT EXISTS task_tombstones (
+                    task_id INTEGER PRIMARY KEY,
+                    user_id INTEGER NOT NULL,
+                    version INTEGER NOT NULL,
+                    deleted_at TEXT NOT NULL DEFAULT CURRENT_TIMESTAMP
+                )
+                """);
+            statement.executeUpdate(
+                "CREATE INDEX IF NOT EXISTS idx_task_tombstones_user_version ON task_tombstones(user_id, version)"
+            );
+            statement.executeUpdate("CREATE INDEX IF NOT EXISTS idx_tasks_user_version ON tasks(user_id, version)");
+            statement.executeUpdate("""
+                CREATE TRIGGER IF NOT EXISTS trg_tasks_version_insert AFTER INSERT ON tasks
+                BEGIN
+                    UPDATE users SET task_version = task_version + 1 WHERE id = NEW.user_id;
+                    UPDATE tasks SET version = (SELECT task_version FROM users WHERE id = NEW.user_id),
+                                     updated_at = CURRENT_TIMESTAMP
+                    WHERE id = NEW.id;
+                END
+                """);
+            // Status writes that leave the status as it was are not changes.
+            statement.executeUpdate("""
+                CREATE TRIGGER IF NOT EXISTS trg_tasks_version_update AFTER UPDATE OF title, notes, due_date, status ON tasks
+                WHEN NEW.title IS NOT OLD.title OR NEW.notes IS NOT OLD.notes OR NEW.due_date IS NOT OLD.due_date
+                    OR NEW.status IS NOT OLD.status
+                BEGIN
+                    UPDATE users SET task_version = task_version + 1 WHERE id = NEW.user_id;
+                    UPDATE tasks SET version = (SELECT task_version FROM users WHERE id = NEW.user_id),
+                                     updated_at = CURRENT_TIMESTAMP
+                    WHERE id = NEW.id;
+                END
+                """);
+            statement.executeUpdate("""
+                CREATE TRIGGER IF NOT EXISTS trg_tasks_version_delete AFTER DELETE ON tasks
+                BEGIN
+                    UPDATE users SET task_version = task_version + 1 WHERE id = OLD.user_id;
+                    INSERT OR REPLACE INTO task_tombstones(task_id, user_id, version)
+                    VALUES (OLD.id, OLD.user_id, (SELECT task_version FROM users WHERE id = OLD.user_id));
+                END
+                """);
+        }
+    }
+
+    // Indexes user_id next to title and notes, so a search can put the owner into the MATCH itself and
+    // FTS5 only ranks that user's rows instead of every user's in the shard. The column keeps the
+    // tasks column name, which lets 'rebuild' read it from the content table. The prefix indexes serve
+    // the last, still being typed word without merging every term it starts.
+    private static void scopeTaskSearchToUser(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("DROP TRIGGER IF EXISTS trg_tasks_fts_insert");
+            statement.executeUpdate("DROP TRIGGER IF EXISTS trg_tasks_fts_delete");
+            statement.executeUpdate("DROP TRIGGER IF EXISTS trg_tasks_fts_update");
+            statement.executeUpdate("DROP TABLE IF EXISTS tasks_fts");
+            statement.executeUpdate(
+                "CREATE VIRTUAL TABLE tasks_fts USING fts5(title, notes, user_id, content='tasks', content_rowid='id', "
+                    + "prefix='2 3')"
+            );
+            statement.executeUpdate("""
+                CREATE TRIGGER trg_tasks_fts_insert AFTER INSERT ON tasks
+                BEGIN
+                    INSERT INTO tasks_fts(rowid, title, notes, user_id) VALUES (NEW.id, NEW.title, NEW.notes, NEW.user_id);
+                END
+                """);
+            statement.executeUpdate("""
+                CREATE TRIGGER trg_tasks_fts_delete AFTER DELETE ON tasks
+                BEGIN
+                    INSERT INTO tasks_fts(tasks_fts, rowid, title, notes, user_id)
+                    VALUES ('delete', OLD.id, OLD.title, OLD.notes, OLD.user_id);
+                END
+                """);
+            statement.executeUpdate("""
+                CREATE TRIGGER trg_tasks_fts_update AFTER UPDATE OF title, notes, user_id ON tasks
+                BEGIN
+                    INSERT INTO tasks_fts(tasks_fts, rowid, title, notes, user_id)
+                    VALUES ('delete', OLD.id, OLD.title, OLD.notes, OLD.user_id);
+                    INSERT INTO tasks_fts(rowid, title, notes, user_id) VALUES (NEW.id, NEW.title, NEW.notes, NEW.user_id);
+                END
+                """);
+            statement.executeUpdate("INSERT INTO tasks_fts(tasks_fts) VALUES ('rebuild')");
+        }
+    }
+
+    static Set<String> columns(Connection connection, String tableName) throws SQLException {
+        Set<String> columns = new HashSet<>();
+        try (PreparedStatement statement = connection.prepareStatement("PRAGMA table_info(" + tableName + ")");
+             ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                columns.add(resultSet.getString("name"));
+            }
+        }
+        return columns;
+    }
+
+    private static void addColumnIfMissing(Connection connection, String tableName, Set<String> columns, String column, String type)
+        throws SQLException {
+        if (!columns.contains(column)) {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("ALTER TABLE " + tableName + " ADD COLUMN " + column + " " + type);
+            }
+        }
+    }
+
+    private record Migration(int version, String description, Step step) {
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        void apply(Connection connection) throws SQLException;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.todo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+// Spreads users over several SQLite files, each with its own writer, so writes for users on
+// different shards never wait on the same write lock. A new user is placed by the hash of their
+// name; user ids are then striped across shards (shard i only hands out ids i + 1, i + 1 + N, ...),
+// so every later lookup can find the shard from the id alone.
+public final class ShardedDatabase implements AutoCloseable {
+    private final List<Database> shards;
+
+    // The pattern holds one %d for the shard index, e.g. "jdbc:sqlite:todo-%d.db".
+    public ShardedDatabase(String jdbcUrlPattern, int shardCount) {
+        this(openShards(jdbcUrlPattern, shardCount));
+    }
+
+    private ShardedDatabase(List<Database> shards) {
+        this.shards = List.copyOf(shards);
+    }
+
+    // Unsharded layout: one file holds every user, and ids are handed out exactly as AUTOINCREMENT would.
+    static ShardedDatabase single(Database database) {
+        return new ShardedDatabase(List.of(database));
+    }
+
+    public int shardCount() {
+        return shards.size();
+    }
+
+    // Migrates every shard and checks that each one only holds users whose ids route to it.
+    public void initialize() {
+        for (int index = 0; index < shards.size(); index++) {
+            Database shard = shards.get(index);
+            shard.initialize();
+            if (shards.size() > 1) {
+                checkUserIds(shard, index);
+            }
+        }
+    }
+
+    int shardForUser(int userId) {
+        return Math.floorMod(userId - 1, shards.size());
+    }
+
+    int shardForName(String name) {
+        return Math.floorMod(name.hashCode(), shards.size());
+    }
+
+    Database forUser(int userId) {
+        return shards.get(shardForUser(userId));
+    }
+
+    Database forName(String name) {
+        return shards.get(shardForName(name));
+    }
+
+    Database shard(int index) {
+        return shards.get(index);
+    }
+
+    List<Database> shards() {
+        return shards;
+    }
+
+    // Opens a read transaction on every shard before running the reads, so reads that span
+    // users see one snapshot per shard, all taken before the first query.
+    <T> T readTransaction(Supplier<T> reads) {
+        return readTransaction(0, reads);
+    }
+
+    @Override
+    public void close() {
+        for (Database shard : shards) {
+            shard.close();
+        }
+    }
+
+    private <T> T readTransaction(int index, Supplier<T> reads) {
+        if (index == shards.size()) {
+            return reads.get();
+        }
+        return shards.get(index).readTransaction(() -> readTransaction(index + 1, reads));
+    }
+
+    private void checkUserIds(Database shard, int index) {
+        try (Connection connection = shard.connectForRead();
+             PreparedStatement statement = connection.prepareStatement(
+                 "SELECT COUNT(*) FROM users WHERE (id - 1) % ? <> ?"
+             )) {
+            statement.setInt(1, shards.size());
+            statement.setInt(2, index);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next() && resultSet.getInt(1) > 0) {
+                    throw new IllegalStateException("Shard " + index + " holds users that belong to another shard; "
+                        + "reshard the data with DatabaseMaintenance reshard");
+                }
+            }
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Failed to check shard " + index, ex);
+        }
+    }
+
+    private static List<Database> openShards(String jdbcUrlPattern, int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be at least 1");
+        }
+        if (shardCount > 1 && !jdbcUrlPattern.contains("%d")) {
+            throw new IllegalArgumentException("Shard URL pattern needs a %d placeholder: " + jdbcUrlPattern);
+        }
+        List<Database> shards = new ArrayList<>(shardCount);
+        for (int index = 0; index < shardCount; index++) {
+            shards.add(new Database(String.format(jdbcUrlPattern, index)));
+        }
+        return shards;
+    }
+}
@@ -0,0 +1,9 @@
+package com.example.todo;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+@FunctionalInterface
+interface SqlFunction<T> {
+    T apply(Connection connection) throws SQLException;
+}
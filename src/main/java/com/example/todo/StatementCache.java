@@ -0,0 +1,84 @@
+package com.example.todo;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+// LRU cache of prepared statements for one physical connection, keyed by SQL text.
+// A statement is removed while checked out, so two concurrent users of the same SQL
+// never share it; the second one simply gets a fresh statement.
+final class StatementCache {
+    private final Connection connection;
+    private final Counters counters;
+    private final Map<String, PreparedStatement> statements;
+
+    StatementCache(Connection connection, int capacity, Counters counters) {
+        this.connection = connection;
+        this.counters = counters;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                counters.evictions.incrementAndGet();
+                closeQuietly(eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    synchronized PreparedStatement checkOut(String sql) throws SQLException {
+        PreparedStatement cached = statements.remove(sql);
+        if (cached != null && !cached.isClosed()) {
+            counters.hits.incrementAndGet();
+            return cached;
+        }
+        counters.misses.incrementAndGet();
+        return connection.prepareStatement(sql);
+    }
+
+    synchronized void checkIn(String sql, PreparedStatement statement) {
+        try {
+            statement.clearParameters();
+        } catch (SQLException ex) {
+            closeQuietly(statement);
+            return;
+        }
+        PreparedStatement previous = statements.put(sql, statement);
+        if (previous != null && previous != statement) {
+            closeQuietly(previous);
+        }
+    }
+
+    synchronized void closeAll() {
+        List<PreparedStatement> open = new ArrayList<>(statements.values());
+        statements.clear();
+        for (PreparedStatement statement : open) {
+            closeQuietly(statement);
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+            // Nothing useful to do when a cached statement fails to close.
+        }
+    }
+
+    static final class Counters {
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong evictions = new AtomicLong();
+
+        CacheStats snapshot() {
+            return new CacheStats(hits.get(), misses.get(), evictions.get());
+        }
+    }
+}
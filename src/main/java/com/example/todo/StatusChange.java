@@ -0,0 +1,4 @@
+package com.example.todo;
+
+public record StatusChange(int taskId, TaskStatus status) {
+}
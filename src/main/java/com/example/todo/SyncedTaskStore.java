@@ -0,0 +1,186 @@
+package com.example.todo;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+// The sync server's copy of every user's tasks. Each user has their own lock, so pushes and reports
+// for different users never wait on each other. A report reads an immutable snapshot of the user's
+// tasks without taking the lock; a push swaps in a new snapshot as its last step under the lock, so
+// a report running next to a push sees the tasks from before it, never half of it.
+//
+// Memory is bounded by a cap on the tasks held over all users. When a push goes over it, the users
+// that have been idle longest are evicted until it fits again, and users idle for longer than
+// idleEviction are evicted anyway. An evicted user's next delta push is refused as unknown, which
+// makes their client push everything again.
+final class SyncedTaskStore {
+    static final String DEFAULT_USER = "";
+    static final long DEFAULT_MAX_TASKS = 1_000_000;
+    static final Duration DEFAULT_IDLE_EVICTION = Duration.ofHours(1);
+    // Refused delta push; see TaskSyncResponse.RESYNC_REQUIRED.
+    static final int UNKNOWN_VERSION = -1;
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private final Map<String, UserTasks> users = new ConcurrentHashMap<>();
+    private final AtomicLong totalTasks = new AtomicLong();
+    private final AtomicLong lastSweepNanos = new AtomicLong(System.nanoTime());
+    private final long maxTasks;
+    private final long idleEvictionNanos;
+    private final long sweepIntervalNanos;
+
+    SyncedTaskStore(long maxTasks, Duration idleEviction) {
+        if (maxTasks < 1) {
+            throw new IllegalArgumentException("Task limit must be positive");
+        }
+        this.maxTasks = maxTasks;
+        this.idleEvictionNanos = idleEviction.toNanos();
+        this.sweepIntervalNanos = Math.min(SWEEP_INTERVAL_NANOS, idleEvictionNanos);
+    }
+
+    // Replaces the user's tasks with a full list that carries no version; returns how many there are.
+    int replace(String user, List<Task> tasks) {
+        return write(user, entry -> {
+            entry.tasks.clear();
+            for (Task task : tasks) {
+                entry.tasks.put(task.id(), task);
+            }
+            entry.version = TaskSyncClient.NOT_SYNCED;
+            entry.snapshot = List.copyOf(entry.tasks.values());
+            return entry.tasks.size();
+        });
+    }
+
+    // Applies a delta push made from baseVersion, deletions first, since a restored task can be both
+    // deleted and changed after it. Returns the user's task count, or UNKNOWN_VERSION when the store
+    // does not hold baseVersion and the push is not a reset.
+    int applyChanges(String user, long baseVersion, long version, boolean reset, List<Task> changed,
+                     List<Integer> deletedTaskIds) {
+        return write(user, entry -> {
+            if (!reset && baseVersion != entry.version) {
+                return UNKNOWN_VERSION;
+            }
+            if (reset) {
+                entry.tasks.clear();
+            }
+            for (int taskId : deletedTaskIds) {
+                entry.tasks.remove(taskId);
+            }
+            for (Task task : changed) {
+                entry.tasks.put(task.id(), task);
+            }
+            entry.version = version;
+            entry.snapshot = List.copyOf(entry.tasks.values());
+            return entry.tasks.size();
+        });
+    }
+
+    // The user's tasks as of the last completed push; empty for users never synced or evicted.
+    List<Task> snapshot(String user) {
+        UserTasks entry = users.get(user);
+        if (entry == null) {
+            return List.of();
+        }
+        entry.lastUsedNanos = System.nanoTime();
+        return entry.snapshot;
+    }
+
+    int userCount() {
+        return users.size();
+    }
+
+    long taskCount() {
+        return totalTasks.get();
+    }
+
+    private int write(String user, ToIntFunction<UserTasks> change) {
+        while (true) {
+            UserTasks entry = users.computeIfAbsent(user, UserTasks::new);
+            int result;
+            entry.lock.lock();
+            try {
+                if (entry.evicted) {
+                    // Evicted between the lookup and the lock; the next lookup creates a fresh entry.
+                    continue;
+                }
+                int before = entry.tasks.size();
+                result = change.applyAsInt(entry);
+                totalTasks.addAndGet(entry.tasks.size() - before);
+                entry.lastUsedNanos = System.nanoTime();
+            } finally {
+                entry.lock.unlock();
+            }
+            evictIfNeeded(entry);
+            return result;
+        }
+    }
+
+    // Runs when the store is over its cap, and otherwise once per sweep interval (a minute, or the idle
+    // limit when that is shorter) for the idle users. A user that is busy right now is skipped rather
+    // than waited for, and so is the one that just pushed.
+    private void evictIfNeeded(UserTasks pushed) {
+        long now = System.nanoTime();
+        long lastSweep = lastSweepNanos.get();
+        boolean sweep = now - lastSweep >= sweepIntervalNanos && lastSweepNanos.compareAndSet(lastSweep, now);
+        if (!sweep && totalTasks.get() <= maxTasks) {
+            return;
+        }
+        // lastUsedNanos keeps moving, so sort on a copy taken once.
+        List<Candidate> candidates = new ArrayList<>(users.size());
+        for (UserTasks entry : users.values()) {
+            candidates.add(new Candidate(entry, entry.lastUsedNanos));
+        }
+        candidates.sort(Comparator.comparingLong(Candidate::lastUsedNanos));
+        for (Candidate candidate : candidates) {
+            boolean idle = now - candidate.lastUsedNanos() >= idleEvictionNanos;
+            if (!idle && totalTasks.get() <= maxTasks) {
+                break;
+            }
+            if (candidate.entry() != pushed) {
+                evict(candidate.entry());
+            }
+        }
+    }
+
+    private void evict(UserTasks entry) {
+        if (!entry.lock.tryLock()) {
+            return;
+        }
+        try {
+            if (entry.evicted) {
+                return;
+            }
+            entry.evicted = true;
+            users.remove(entry.user, entry);
+            totalTasks.addAndGet(-entry.tasks.size());
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    private record Candidate(UserTasks entry, long lastUsedNanos) {
+    }
+
+    // tasks, version and evicted are guarded by lock.
+    private static final class UserTasks {
+        private final String user;
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Map<Integer, Task> tasks = new LinkedHashMap<>();
+        private long version = TaskSyncClient.NOT_SYNCED;
+        private boolean evicted;
+        // A copy of tasks as of the last completed push; replaced, never changed.
+        private volatile List<Task> snapshot = List.of();
+        private volatile long lastUsedNanos = System.nanoTime();
+
+        private UserTasks(String user) {
+            this.user = user;
+        }
+    }
+}
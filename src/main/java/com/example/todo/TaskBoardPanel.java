@@ -1,12 +1,13 @@
 package com.example.todo;
 
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 import javax.swing.border.EmptyBorder;
 import java.awt.GridLayout;
 import java.util.List;
 
 public class TaskBoardPanel extends JPanel {
-    private final ToDoRepository repository;
+    private final AsyncToDoRepository repository;
     private final Runnable onTaskChange;
     private final TaskColumnPanel todoColumn;
     private final TaskColumnPanel doingColumn;
@@ -14,7 +15,7 @@ public class TaskBoardPanel extends JPanel {
     private TaskCard selectedCard;
     private int activeUserId;
 
-    public TaskBoardPanel(ToDoRepository repository, Runnable onTaskChange) {
+    public TaskBoardPanel(AsyncToDoRepository repository, Runnable onTaskChange) {
         this.repository = repository;
         this.onTaskChange = onTaskChange;
         setLayout(new GridLayout(1, 3, 16, 0));
@@ -30,12 +31,12 @@ public class TaskBoardPanel extends JPanel {
         add(doneColumn);
     }
 
-    public void refresh(int userId) {
+    public void refresh(int userId, Board board) {
         this.activeUserId = userId;
         clearSelection();
-        populate(todoColumn, repository.fetchTasksByStatus(userId, TaskStatus.TODO));
-        populate(doingColumn, repository.fetchTasksByStatus(userId, TaskStatus.DOING));
-        populate(doneColumn, repository.fetchTasksByStatus(userId, TaskStatus.DONE));
+        populate(todoColumn, board.todo());
+        populate(doingColumn, board.doing());
+        populate(doneColumn, board.done());
     }
 
     public Task getSelectedTask() {
@@ -46,11 +47,15 @@ public class TaskBoardPanel extends JPanel {
         column.setTasks(tasks, this::selectCard);
     }
 
+    // The status write is queued to the database writer; the board refreshes once it has committed.
     private void handleDrop(int taskId, TaskStatus status) {
-        boolean updated = repository.updateTaskStatus(activeUserId, taskId, status);
-        if (updated) {
-            onTaskChange.run();
-        }
+        repository.updateTaskStatus(activeUserId, taskId, status).whenComplete((updated, error) -> {
+            if (error != null) {
+                System.err.println("Failed to move task: " + error.getMessage());
+            } else if (updated) {
+                SwingUtilities.invokeLater(onTaskChange);
+            }
+        });
     }
 
     private void selectCard(TaskCard card) {
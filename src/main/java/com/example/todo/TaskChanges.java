@@ -0,0 +1,9 @@
+package com.example.todo;
+
+import java.util.List;
+
+// A user's task changes after some version, oldest first. version is the user's current version, to
+// pass on the next call. When reset is set the requested version was older than the kept delete
+// history (or unknown), and changed holds every current task: the caller should replace what it has.
+public record TaskChanges(long version, boolean reset, List<Task> changed, List<Integer> deletedTaskIds) {
+}
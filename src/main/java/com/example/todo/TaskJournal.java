@@ -0,0 +1,128 @@
+package com.example.todo;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+// Append-only log of framed records in a memory-mapped file. A frame is the payload length, a CRC32
+// of the payload and the payload; the mapping grows in fixed steps and its unused tail stays zero,
+// so reading stops at the first zero length. Opening hands every intact frame to a replay callback
+// and cuts the file off at the first damaged one, which is what a torn write leaves behind.
+final class TaskJournal implements AutoCloseable {
+    private static final int MAGIC = 0x544A4E4C;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int FRAME_HEADER_SIZE = 8;
+    private static final int MAP_STEP = 16 * 1024 * 1024;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final CRC32 crc = new CRC32();
+    private MappedByteBuffer buffer;
+    private int position;
+
+    private TaskJournal(Path path, FileChannel channel) {
+        this.path = path;
+        this.channel = channel;
+    }
+
+    static TaskJournal open(Path path, Consumer<ByteBuffer> replay) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        try {
+            TaskJournal journal = new TaskJournal(path, channel);
+            journal.recover(replay);
+            return journal;
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    // Bytes in use, header included.
+    int size() {
+        return position;
+    }
+
+    // Only a process crash is covered until force(); the mapping is written back by the OS.
+    void append(byte[] payload) throws IOException {
+        int frameSize = FRAME_HEADER_SIZE + payload.length;
+        if ((long) position + frameSize > buffer.capacity()) {
+            remap((long) position + frameSize);
+        }
+        crc.reset();
+        crc.update(payload);
+        buffer.putInt(position + 4, (int) crc.getValue());
+        buffer.put(position + FRAME_HEADER_SIZE, payload);
+        // The length goes in last, so a reader never takes a half-copied payload for a frame.
+        buffer.putInt(position, payload.length);
+        position += frameSize;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private void recover(Consumer<ByteBuffer> replay) throws IOException {
+        long fileSize = channel.size();
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new IOException("Journal " + path + " is larger than 2 GB");
+        }
+        ByteBuffer existing = channel.map(FileChannel.MapMode.READ_ONLY, 0, fileSize);
+        // A new file, or one whose header never reached the disk.
+        if (fileSize < HEADER_SIZE || existing.getInt(0) == 0) {
+            channel.truncate(0);
+            remap(HEADER_SIZE);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            position = HEADER_SIZE;
+            return;
+        }
+        if (existing.getInt(0) != MAGIC) {
+            throw new IOException("Not a task journal: " + path);
+        }
+        int version = existing.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported journal version " + version + " in " + path);
+        }
+        int end = HEADER_SIZE;
+        while (end + FRAME_HEADER_SIZE <= fileSize) {
+            int length = existing.getInt(end);
+            if (length <= 0 || length > fileSize - end - FRAME_HEADER_SIZE) {
+                break;
+            }
+            ByteBuffer payload = existing.slice(end + FRAME_HEADER_SIZE, length);
+            crc.reset();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != existing.getInt(end + 4)) {
+                break;
+            }
+            replay.accept(payload);
+            end += FRAME_HEADER_SIZE + length;
+        }
+        // Pages of a mapping reach the disk in no particular order, so intact-looking frames may
+        // follow a damaged one; drop everything after the last frame that was replayed.
+        channel.truncate(end);
+        position = end;
+        remap(end);
+    }
+
+    private void remap(long required) throws IOException {
+        long size = (required + MAP_STEP - 1) / MAP_STEP * MAP_STEP;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Journal " + path + " is full");
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+}
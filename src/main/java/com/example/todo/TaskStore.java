@@ -0,0 +1,142 @@
+package com.example.todo;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+// Storage for users and their tasks. ToDoRepository keeps everything in SQLite; InMemoryTaskStore
+// keeps it on the heap. Task ordering follows SQLite's: by due date with missing dates first,
+// then creation time, then id.
+public interface TaskStore {
+    User ensureUser(String name);
+
+    Optional<User> findUserByName(String name);
+
+    Optional<User> findUserById(int userId);
+
+    User updateProfile(int userId, String displayName, String focusArea, Integer dailyGoal);
+
+    // Open tasks first, then completed ones.
+    List<Task> fetchTasks(int userId);
+
+    List<Task> fetchTasksByStatus(int userId, TaskStatus status);
+
+    Board fetchBoard(int userId);
+
+    // Returns up to limit tasks that sort after the given task, or from the start when after is null.
+    List<Task> fetchTasksAfter(int userId, Task after, int limit);
+
+    List<Task> fetchOverdueTasks(int userId, LocalDate today);
+
+    List<Task> fetchTasksDueBetween(int userId, LocalDate from, LocalDate to);
+
+    List<Task> fetchNextDueTasks(int userId, LocalDate from, int limit);
+
+    List<Task> searchTasks(int userId, String query, int limit);
+
+    Task addTask(int userId, String title, String notes, String dueDate);
+
+    List<Task> addTasks(int userId, List<NewTask> newTasks);
+
+    boolean updateTaskStatus(int userId, int taskId, TaskStatus status);
+
+    List<Boolean> updateStatuses(int userId, List<StatusChange> changes);
+
+    boolean deleteTask(int userId, int taskId);
+
+    List<Boolean> deleteTasks(int userId, List<Integer> taskIds);
+
+    TaskStats fetchStats(int userId);
+
+    int archiveCompletedTasks(Duration olderThan);
+
+    List<ArchivedTask> fetchArchivedTasks(int userId, ArchivedTask after, int limit);
+
+    Optional<Task> restoreTask(int userId, int archivedTaskId);
+
+    // Every write bumps the user's version and stamps it on the rows it touches; deletes leave a
+    // tombstone carrying the version until compactTombstones drops it.
+    TaskChanges fetchTasksChangedSince(int userId, long version);
+
+    // Drops tombstones of tasks deleted more than olderThan ago and returns how many were dropped.
+    int compactTombstones(Duration olderThan);
+
+    void rebuildTaskCounters();
+
+    // Returns the ids of users whose stored counters differ from a full recount of their tasks.
+    List<Integer> verifyTaskCounters();
+
+    // Runs the given reads against one consistent view of the store.
+    <T> T readConsistent(Supplier<T> reads);
+
+    default boolean markComplete(int userId, int taskId) {
+        return updateTaskStatus(userId, taskId, TaskStatus.DONE);
+    }
+
+    default boolean markIncomplete(int userId, int taskId) {
+        return updateTaskStatus(userId, taskId, TaskStatus.TODO);
+    }
+
+    // Stores whose writes are not queued complete these before returning.
+    default CompletableFuture<Task> addTaskAsync(int userId, String title, String notes, String dueDate) {
+        return completed(() -> addTask(userId, title, notes, dueDate));
+    }
+
+    default CompletableFuture<Boolean> updateTaskStatusAsync(int userId, int taskId, TaskStatus status) {
+        return completed(() -> updateTaskStatus(userId, taskId, status));
+    }
+
+    default CompletableFuture<Boolean> deleteTaskAsync(int userId, int taskId) {
+        return completed(() -> deleteTask(userId, taskId));
+    }
+
+    // Lazily pages through all of a user's tasks; at most one page is held in memory and nothing is
+    // held open between pages, so long exports never pin a snapshot.
+    default Stream<Task> streamTasks(int userId, int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        Spliterator<Task> pages = new Spliterators.AbstractSpliterator<>(Long.MAX_VALUE,
+            Spliterator.ORDERED | Spliterator.NONNULL) {
+            private List<Task> page = List.of();
+            private int index;
+            private Task last;
+            private boolean exhausted;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super Task> action) {
+                if (index == page.size()) {
+                    if (exhausted) {
+                        return false;
+                    }
+                    page = fetchTasksAfter(userId, last, pageSize);
+                    index = 0;
+                    exhausted = page.size() < pageSize;
+                    if (page.isEmpty()) {
+                        return false;
+                    }
+                }
+                last = page.get(index++);
+                action.accept(last);
+                return true;
+            }
+        };
+        return StreamSupport.stream(pages, false);
+    }
+
+    private static <T> CompletableFuture<T> completed(Supplier<T> write) {
+        try {
+            return CompletableFuture.completedFuture(write.get());
+        } catch (RuntimeException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+}
@@ -1,40 +1,256 @@
 package com.example.todo;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.PushbackInputStream;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
-public class TaskSyncClient {
+// Without keep-alive every request opens its own connection. With keep-alive the client holds up to
+// maxConnections sessions open and pipelines requests over them: a request goes to an idle session,
+// or to a new one while there are fewer than maxConnections, and otherwise joins the least busy one.
+public class TaskSyncClient implements AutoCloseable {
     public static final int DEFAULT_PORT = 5555;
+    public static final int DEFAULT_KEEP_ALIVE_CONNECTIONS = 2;
+    public static final long NOT_SYNCED = -1;
+    public static final long RESYNC_REQUIRED = TaskSyncResponse.RESYNC_REQUIRED;
+    // Below the server's 30 s read timeout, so a session is retired before the server drops it.
+    private static final long KEEP_ALIVE_IDLE_NANOS = TimeUnit.SECONDS.toNanos(20);
+    private static final long RESPONSE_TIMEOUT_SECONDS = 60;
+
+    // Each thread encodes the requests it sends on their own connection into its own reusable buffer.
+    private static final ThreadLocal<TaskWireCodec> CODECS =
+        ThreadLocal.withInitial(() -> new TaskWireCodec(TaskWireCodec.VERSION));
 
     private final String host;
     private final int port;
+    private final int maxConnections;
+    private final List<TaskSyncSession> sessions = new ArrayList<>();
+    private volatile boolean serializationOnly;
 
     public TaskSyncClient(String host, int port) {
+        this(host, port, 0);
+    }
+
+    // maxConnections of zero turns keep-alive off.
+    public TaskSyncClient(String host, int port, int maxConnections) {
+        if (maxConnections < 0) {
+            throw new IllegalArgumentException("Connection limit cannot be negative");
+        }
         this.host = host;
         this.port = port;
+        this.maxConnections = maxConnections;
     }
 
-    public String syncTasks(List<Task> tasks) throws IOException, ClassNotFoundException {
-        TaskSyncResponse response = sendRequest(TaskSyncRequest.pushTasks(tasks));
+    // Pushes what changed in the user's tasks since the version the server acknowledged last, or
+    // everything when acknowledgedVersion is NOT_SYNCED or changes is a reset. Returns the version the
+    // server acknowledges now, or RESYNC_REQUIRED when it no longer holds acknowledgedVersion; push
+    // again from NOT_SYNCED in that case.
+    public long pushChanges(String user, long acknowledgedVersion, TaskChanges changes)
+        throws IOException, ClassNotFoundException {
+        boolean reset = acknowledgedVersion == NOT_SYNCED || changes.reset();
+        TaskSyncResponse response = sendRequest(TaskSyncRequest.pushChanges(user, acknowledgedVersion,
+            changes.version(), reset, changes.changed(), reset ? List.of() : changes.deletedTaskIds()));
         if (response.isOk()) {
-            return response.getMessage();
+            return response.getVersion();
+        }
+        if (response.getVersion() == TaskSyncResponse.RESYNC_REQUIRED) {
+            return RESYNC_REQUIRED;
         }
         throw new IOException(response.getMessage());
     }
 
+    // Without a user the tasks go to the copy the server shares between all clients that name none.
+    public String syncTasks(List<Task> tasks) throws IOException, ClassNotFoundException {
+        return syncTasks(null, tasks);
+    }
+
+    public String syncTasks(String user, List<Task> tasks) throws IOException, ClassNotFoundException {
+        return pushMessage(sendRequest(TaskSyncRequest.pushTasks(user, tasks)));
+    }
+
     // Request-response interaction over TCP for sync operations.
     public String downloadReportCsv() throws IOException, ClassNotFoundException {
-        TaskSyncResponse response = sendRequest(TaskSyncRequest.getReportCsv());
+        return downloadReportCsv(null);
+    }
+
+    public String downloadReportCsv(String user) throws IOException, ClassNotFoundException {
+        return reportCsv(sendRequest(TaskSyncRequest.getReportCsv(user)));
+    }
+
+    // With keep-alive the request is on the wire when this returns and further requests can follow
+    // it on the same connection; without keep-alive it runs on the calling thread.
+    public CompletableFuture<String> syncTasksAsync(List<Task> tasks) {
+        return syncTasksAsync(null, tasks);
+    }
+
+    public CompletableFuture<String> syncTasksAsync(String user, List<Task> tasks) {
+        return sendAsync(TaskSyncRequest.pushTasks(user, tasks)).thenApply(response -> {
+            try {
+                return pushMessage(response);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        });
+    }
+
+    public CompletableFuture<String> downloadReportCsvAsync() {
+        return downloadReportCsvAsync(null);
+    }
+
+    public CompletableFuture<String> downloadReportCsvAsync(String user) {
+        return sendAsync(TaskSyncRequest.getReportCsv(user)).thenApply(response -> {
+            try {
+                return reportCsv(response);
+            } catch (IOException ex) {
+                throw new CompletionException(ex);
+            }
+        });
+    }
+
+    // Closes the kept-alive connections; requests still waiting on them fail.
+    @Override
+    public void close() {
+        List<TaskSyncSession> open;
+        synchronized (sessions) {
+            open = new ArrayList<>(sessions);
+            sessions.clear();
+        }
+        open.forEach(TaskSyncSession::close);
+    }
+
+    private static String pushMessage(TaskSyncResponse response) throws IOException {
+        if (response.isOk()) {
+            return response.getMessage();
+        }
+        throw new IOException(response.getMessage());
+    }
+
+    private static String reportCsv(TaskSyncResponse response) throws IOException {
         if (response.isOk()) {
             return response.getCsv();
         }
         throw new IOException(response.getMessage());
     }
 
+    // A kept-alive connection can die while idle, when the server restarts for example; both
+    // requests are safe to repeat, so one that fails on a connection gets one more try.
     private TaskSyncResponse sendRequest(TaskSyncRequest request) throws IOException, ClassNotFoundException {
+        TaskSyncSession session = keepAliveSession();
+        if (session == null) {
+            return sendSingleRequest(request);
+        }
+        try {
+            return await(session, request);
+        } catch (InterruptedIOException ex) {
+            // Timed out or interrupted: repeating would only make the caller wait longer.
+            throw ex;
+        } catch (IOException ex) {
+            TaskSyncSession retry = keepAliveSession();
+            return retry == null ? sendSingleRequest(request) : await(retry, request);
+        }
+    }
+
+    private static TaskSyncResponse await(TaskSyncSession session, TaskSyncRequest request) throws IOException {
+        try {
+            return session.send(request).get(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (ExecutionException ex) {
+            throw ex.getCause() instanceof IOException io ? io : new IOException("Sync request failed.", ex.getCause());
+        } catch (TimeoutException ex) {
+            session.close();
+            throw new SocketTimeoutException("Sync server did not answer in time.");
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the sync server.");
+        }
+    }
+
+    private CompletableFuture<TaskSyncResponse> sendAsync(TaskSyncRequest request) {
+        try {
+            TaskSyncSession session = keepAliveSession();
+            if (session != null) {
+                return session.send(request);
+            }
+            return CompletableFuture.completedFuture(sendSingleRequest(request));
+        } catch (IOException | ClassNotFoundException ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    // Null when keep-alive is off or the server does not support it.
+    private TaskSyncSession keepAliveSession() throws IOException {
+        if (maxConnections == 0 || serializationOnly) {
+            return null;
+        }
+        synchronized (sessions) {
+            TaskSyncSession leastBusy = null;
+            Iterator<TaskSyncSession> iterator = sessions.iterator();
+            while (iterator.hasNext()) {
+                TaskSyncSession session = iterator.next();
+                if (!session.isUsable(KEEP_ALIVE_IDLE_NANOS)) {
+                    session.close();
+                    iterator.remove();
+                } else if (leastBusy == null || session.inFlight() < leastBusy.inFlight()) {
+                    leastBusy = session;
+                }
+            }
+            if (leastBusy != null && (leastBusy.inFlight() == 0 || sessions.size() >= maxConnections)) {
+                return leastBusy;
+            }
+            TaskSyncSession opened = TaskSyncSession.open(host, port);
+            if (opened == null) {
+                serializationOnly = true;
+                return leastBusy;
+            }
+            sessions.add(opened);
+            return opened;
+        }
+    }
+
+    // One request on its own connection. Speaks the binary codec unless the server is older than it,
+    // in which case this client sticks to Java serialization, which every older server speaks.
+    private TaskSyncResponse sendSingleRequest(TaskSyncRequest request) throws IOException, ClassNotFoundException {
+        if (!serializationOnly) {
+            TaskSyncResponse response = sendBinaryRequest(request);
+            if (response != null) {
+                return response;
+            }
+            serializationOnly = true;
+        }
+        return sendSerializedRequest(request);
+    }
+
+    // A session of one request, sent together with the preamble. Null when the server turns out to be
+    // older than this protocol version.
+    private TaskSyncResponse sendBinaryRequest(TaskSyncRequest request) throws IOException {
+        TaskWireCodec codec = CODECS.get();
+        try (Socket socket = new Socket(host, port)) {
+            BufferedOutputStream output = new BufferedOutputStream(socket.getOutputStream());
+            TaskWireCodec.writePreamble(output, TaskWireCodec.VERSION);
+            codec.writeRequest(output, 1, request);
+            output.flush();
+
+            PushbackInputStream input = new PushbackInputStream(new BufferedInputStream(socket.getInputStream()), 2);
+            if (TaskWireCodec.isJavaSerialization(input) || TaskWireCodec.readPreamble(input) < TaskWireCodec.VERSION) {
+                return null;
+            }
+            return codec.readResponse(input);
+        }
+    }
+
+    private TaskSyncResponse sendSerializedRequest(TaskSyncRequest request) throws IOException, ClassNotFoundException {
         try (Socket socket = new Socket(host, port)) {
             ObjectOutputStream outputStream = new ObjectOutputStream(socket.getOutputStream());
             outputStream.flush();
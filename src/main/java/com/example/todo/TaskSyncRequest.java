@@ -9,12 +9,38 @@ public class TaskSyncRequest implements Serializable {
     @Serial
     private static final long serialVersionUID = 1L;
 
+    // Whose tasks these are; null from clients that predate users, which all share one copy.
+    private final String user;
     private final String type;
     private final List<Task> tasks;
+    // Delta pushes only: the version the server acknowledged last, the version these changes bring the
+    // user to, whether tasks replaces everything the server holds, and the tasks deleted since.
+    private final long baseVersion;
+    private final long version;
+    private final boolean reset;
+    private final List<Integer> deletedTaskIds;
 
     public TaskSyncRequest(String type, List<Task> tasks) {
+        this(null, type, tasks);
+    }
+
+    public TaskSyncRequest(String user, String type, List<Task> tasks) {
+        this(user, type, tasks, 0, 0, false, List.of());
+    }
+
+    private TaskSyncRequest(String user, String type, List<Task> tasks, long baseVersion, long version, boolean reset,
+                            List<Integer> deletedTaskIds) {
+        this.user = user;
         this.type = type;
         this.tasks = tasks;
+        this.baseVersion = baseVersion;
+        this.version = version;
+        this.reset = reset;
+        this.deletedTaskIds = deletedTaskIds;
+    }
+
+    public String getUser() {
+        return user;
     }
 
     public String getType() {
@@ -25,11 +51,42 @@ public class TaskSyncRequest implements Serializable {
         return tasks;
     }
 
+    public long getBaseVersion() {
+        return baseVersion;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isReset() {
+        return reset;
+    }
+
+    // Never null, also for requests serialized before delta pushes existed.
+    public List<Integer> getDeletedTaskIds() {
+        return deletedTaskIds == null ? List.of() : deletedTaskIds;
+    }
+
     public static TaskSyncRequest pushTasks(List<Task> tasks) {
-        return new TaskSyncRequest("PUSH_TASKS", tasks);
+        return pushTasks(null, tasks);
+    }
+
+    public static TaskSyncRequest pushTasks(String user, List<Task> tasks) {
+        return new TaskSyncRequest(user, "PUSH_TASKS", tasks);
+    }
+
+    public static TaskSyncRequest pushChanges(String user, long baseVersion, long version, boolean reset,
+                                              List<Task> tasks, List<Integer> deletedTaskIds) {
+        return new TaskSyncRequest(user, "PUSH_CHANGES", tasks == null ? List.of() : tasks, baseVersion, version,
+            reset, deletedTaskIds == null ? List.of() : deletedTaskIds);
     }
 
     public static TaskSyncRequest getReportCsv() {
-        return new TaskSyncRequest("GET_REPORT_CSV", null);
+        return getReportCsv(null);
+    }
+
+    public static TaskSyncRequest getReportCsv(String user) {
+        return new TaskSyncRequest(user, "GET_REPORT_CSV", null);
     }
 }
@@ -8,14 +8,25 @@ public class TaskSyncResponse implements Serializable {
     @Serial
     private static final long serialVersionUID = 1L;
 
+    // Marks a refused delta push: the server does not hold the base version, so the client has to
+    // push everything again.
+    public static final long RESYNC_REQUIRED = -1;
+
     private final boolean ok;
     private final String message;
     private final String csv;
+    // For delta pushes, the version the server now holds.
+    private final long version;
 
     public TaskSyncResponse(boolean ok, String message, String csv) {
+        this(ok, message, csv, 0);
+    }
+
+    public TaskSyncResponse(boolean ok, String message, String csv, long version) {
         this.ok = ok;
         this.message = message;
         this.csv = csv;
+        this.version = version;
     }
 
     public boolean isOk() {
@@ -29,4 +40,8 @@ public class TaskSyncResponse implements Serializable {
     public String getCsv() {
         return csv;
     }
+
+    public long getVersion() {
+        return version;
+    }
 }
@@ -1,45 +1,277 @@
 package com.example.todo;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputFilter;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.util.ArrayList;
-import java.util.Collections;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.time.Duration;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
+// Every accepted connection is served on its own thread (a virtual one when the runtime has them),
+// so a slow client only holds up itself. Binary clients may keep their connection open for a session
+// of requests. At most maxConnections are served at once; further clients wait in the listen backlog
+// until a slot frees up. stop() closes the listener and idle sessions, gives exchanges in progress a
+// grace period and then closes whatever connections are left.
 public class TaskSyncServer {
     public static final int DEFAULT_PORT = 5555;
+    public static final int DEFAULT_MAX_CONNECTIONS = 2_048;
+    private static final int ACCEPT_BACKLOG = 1_024;
+    // A client that goes quiet, mid-request or between the requests of a session, is dropped instead
+    // of holding its slot.
+    private static final int READ_TIMEOUT_MILLIS = 30_000;
+    private static final long SLOT_POLL_MILLIS = 100;
+    private static final Duration SHUTDOWN_GRACE = Duration.ofSeconds(5);
+    // Serialized requests may only name the protocol's own classes and the JDK types inside them.
+    private static final ObjectInputFilter SERIALIZED_REQUEST_FILTER = ObjectInputFilter.Config.createFilter(
+        "com.example.todo.TaskSyncRequest;com.example.todo.Task;com.example.todo.TaskStatus;"
+            + "java.util.*;java.lang.*;maxdepth=10;maxarray=1000000;!*");
 
     private final int port;
-    private final List<Task> lastReceivedTasks = new ArrayList<>();
+    private final int maxConnections;
+    private final Semaphore connectionSlots;
+    private final Set<Socket> openConnections = ConcurrentHashMap.newKeySet();
+    private final Set<Socket> idleConnections = ConcurrentHashMap.newKeySet();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private volatile ServerSocket listener;
+    private volatile boolean started;
+    private volatile boolean stopping;
+    private final SyncedTaskStore store;
 
     public TaskSyncServer(int port) {
+        this(port, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    public TaskSyncServer(int port, int maxConnections) {
+        this(port, maxConnections, SyncedTaskStore.DEFAULT_MAX_TASKS, SyncedTaskStore.DEFAULT_IDLE_EVICTION);
+    }
+
+    // maxSyncedTasks caps the tasks held for all users together; users idle for idleEviction are dropped.
+    public TaskSyncServer(int port, int maxConnections, long maxSyncedTasks, Duration idleEviction) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Connection limit must be positive");
+        }
         this.port = port;
+        this.maxConnections = maxConnections;
+        this.connectionSlots = new Semaphore(maxConnections);
+        this.store = new SyncedTaskStore(maxSyncedTasks, idleEviction);
     }
 
+    // Serves clients until stop() is called; returns once the connections still open have been closed.
     public void start() throws IOException {
-        try (ServerSocket serverSocket = new ServerSocket(port)) {
-            System.out.printf("Task sync server listening on port %d.%n", port);
-            while (true) {
-                try (Socket clientSocket = serverSocket.accept()) {
-                    handleClient(clientSocket);
-                } catch (ClassNotFoundException ex) {
-                    System.err.println("Failed to read tasks from client: " + ex.getMessage());
+        started = true;
+        ExecutorService handlers = VirtualThreads.newThreadPerTaskExecutor("todo-sync-", maxConnections);
+        try (ServerSocket serverSocket = new ServerSocket(port, ACCEPT_BACKLOG)) {
+            listener = serverSocket;
+            System.out.printf("Task sync server listening on port %d.%n", serverSocket.getLocalPort());
+            while (!stopping) {
+                if (!connectionSlots.tryAcquire(SLOT_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    continue;
+                }
+                Socket clientSocket;
+                try {
+                    clientSocket = serverSocket.accept();
+                } catch (SocketException ex) {
+                    connectionSlots.release();
+                    if (stopping) {
+                        break;
+                    }
+                    throw ex;
+                }
+                openConnections.add(clientSocket);
+                try {
+                    handlers.execute(() -> serve(clientSocket));
+                } catch (RejectedExecutionException ex) {
+                    closeQuietly(clientSocket);
+                    openConnections.remove(clientSocket);
+                    connectionSlots.release();
                 }
             }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            drain(handlers);
+            stopped.countDown();
+        }
+    }
+
+    // Stops accepting connections and waits until start() has wound down.
+    public void stop() {
+        stopping = true;
+        ServerSocket serverSocket = listener;
+        if (serverSocket != null) {
+            closeQuietly(serverSocket);
+        }
+        if (!started) {
+            return;
+        }
+        try {
+            stopped.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
         }
     }
 
+    public int getLocalPort() {
+        ServerSocket serverSocket = listener;
+        return serverSocket == null ? port : serverSocket.getLocalPort();
+    }
+
+    public int activeConnections() {
+        return openConnections.size();
+    }
+
+    // Tasks pushed by clients that do not name a user.
     public List<Task> getLastReceivedTasks() {
-        return Collections.unmodifiableList(lastReceivedTasks);
+        return getLastReceivedTasks(SyncedTaskStore.DEFAULT_USER);
+    }
+
+    public List<Task> getLastReceivedTasks(String user) {
+        return store.snapshot(user);
+    }
+
+    public int syncedUsers() {
+        return store.userCount();
+    }
+
+    public long syncedTasks() {
+        return store.taskCount();
+    }
+
+    private void serve(Socket clientSocket) {
+        try (clientSocket) {
+            clientSocket.setSoTimeout(READ_TIMEOUT_MILLIS);
+            handleClient(clientSocket);
+        } catch (ClassNotFoundException ex) {
+            System.err.println("Failed to read tasks from client: " + ex.getMessage());
+        } catch (IOException ex) {
+            if (!stopping) {
+                System.err.println("Failed to sync with client: " + ex.getMessage());
+            }
+        } finally {
+            openConnections.remove(clientSocket);
+            connectionSlots.release();
+        }
+    }
+
+    private void drain(ExecutorService handlers) {
+        handlers.shutdown();
+        idleConnections.forEach(TaskSyncServer::closeQuietly);
+        try {
+            if (!handlers.awaitTermination(SHUTDOWN_GRACE.toMillis(), TimeUnit.MILLISECONDS)) {
+                openConnections.forEach(TaskSyncServer::closeQuietly);
+                handlers.shutdownNow();
+                handlers.awaitTermination(SHUTDOWN_GRACE.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException ex) {
+            handlers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception ignored) {
+            // Already closed or broken; either way it is gone.
+        }
     }
 
+    // Answers in whichever format the client opened with: the binary codec, or Java serialization
+    // for clients that predate it.
     private void handleClient(Socket clientSocket) throws IOException, ClassNotFoundException {
-        ObjectOutputStream outputStream = new ObjectOutputStream(clientSocket.getOutputStream());
+        PushbackInputStream input = new PushbackInputStream(new BufferedInputStream(clientSocket.getInputStream()), 2);
+        BufferedOutputStream output = new BufferedOutputStream(clientSocket.getOutputStream());
+        if (TaskWireCodec.isJavaSerialization(input)) {
+            handleSerializedClient(input, output);
+            return;
+        }
+
+        int clientVersion = TaskWireCodec.readPreamble(input);
+        int version = Math.min(clientVersion, TaskWireCodec.VERSION);
+        TaskWireCodec.writePreamble(output, version);
+        if (version >= TaskWireCodec.SESSION_VERSION) {
+            serveSession(clientSocket, input, output, version);
+            return;
+        }
+        TaskWireCodec codec = new TaskWireCodec();
+        TaskSyncResponse response;
+        if (version < TaskWireCodec.SINGLE_REQUEST_VERSION) {
+            response = new TaskSyncResponse(false, "Unsupported sync protocol version " + clientVersion + ".", null);
+        } else {
+            response = handleRequest(codec.readRequest(input));
+        }
+        codec.writeResponse(output, response);
+        output.flush();
+    }
+
+    // Keep-alive session: requests are answered in arrival order, each under its own request id, until
+    // the client hangs up, stays idle past the read timeout or the server stops. Responses to pipelined
+    // requests that are already buffered go out in one write.
+    private void serveSession(Socket clientSocket, PushbackInputStream input, OutputStream output, int version)
+        throws IOException {
+        TaskWireCodec codec = new TaskWireCodec(version);
+        output.flush();
+        while (awaitNextRequest(clientSocket, input)) {
+            TaskSyncRequest request = codec.readRequest(input);
+            codec.writeResponse(output, codec.requestId(), handleRequest(request));
+            if (input.available() == 0) {
+                output.flush();
+            }
+        }
+        output.flush();
+    }
+
+    // False when the session is over. While it waits the connection counts as idle, so stop() can
+    // close it straight away instead of waiting out the grace period.
+    private boolean awaitNextRequest(Socket clientSocket, PushbackInputStream input) throws IOException {
+        if (input.available() > 0) {
+            return !stopping;
+        }
+        idleConnections.add(clientSocket);
+        try {
+            if (stopping) {
+                return false;
+            }
+            int next = input.read();
+            if (next < 0) {
+                return false;
+            }
+            input.unread(next);
+            return true;
+        } catch (SocketTimeoutException ex) {
+            return false;
+        } catch (SocketException ex) {
+            if (stopping) {
+                return false;
+            }
+            throw ex;
+        } finally {
+            idleConnections.remove(clientSocket);
+        }
+    }
+
+    private void handleSerializedClient(InputStream input, OutputStream output)
+        throws IOException, ClassNotFoundException {
+        ObjectOutputStream outputStream = new ObjectOutputStream(output);
         outputStream.flush();
-        ObjectInputStream inputStream = new ObjectInputStream(clientSocket.getInputStream());
+        ObjectInputStream inputStream = new ObjectInputStream(input);
+        inputStream.setObjectInputFilter(SERIALIZED_REQUEST_FILTER);
 
         Object payload = inputStream.readObject();
         TaskSyncResponse response = handleRequest(payload);
@@ -54,32 +286,54 @@ public class TaskSyncServer {
             return new TaskSyncResponse(false, "Invalid request received.", null);
         }
 
-        if ("PUSH_TASKS".equals(request.getType())) {
-            List<Task> tasks = request.getTasks();
-            lastReceivedTasks.clear();
-            if (tasks != null) {
-                lastReceivedTasks.addAll(tasks);
-            }
+        String user = request.getUser() == null ? SyncedTaskStore.DEFAULT_USER : request.getUser();
 
-            System.out.printf("Received %d task(s).%n", lastReceivedTasks.size());
-            for (Task task : lastReceivedTasks) {
-                System.out.printf("- [%s] %s (due: %s)%n", task.status(), task.title(), task.dueDate());
-            }
+        if ("PUSH_TASKS".equals(request.getType())) {
+            List<Task> tasks = request.getTasks() == null ? List.of() : request.getTasks();
+            // A full list without a version: the user's next delta push has to start over.
+            store.replace(user, tasks);
+            System.out.printf("Received %d task(s) for %s.%n", tasks.size(), describe(user));
+            return new TaskSyncResponse(true, "Sync completed. Received " + tasks.size() + " tasks.", null);
+        }
 
-            return new TaskSyncResponse(true, "Sync completed. Received " + lastReceivedTasks.size() + " tasks.", null);
+        if ("PUSH_CHANGES".equals(request.getType())) {
+            return applyChanges(user, request);
         }
 
         if ("GET_REPORT_CSV".equals(request.getType())) {
-            if (lastReceivedTasks.isEmpty()) {
+            List<Task> tasks = store.snapshot(user);
+            if (tasks.isEmpty()) {
                 return new TaskSyncResponse(false, "No tasks synced yet.", null);
             }
-            String csv = buildCsvReport(lastReceivedTasks);
+            String csv = buildCsvReport(tasks);
             return new TaskSyncResponse(true, "Report generated.", csv);
         }
 
         return new TaskSyncResponse(false, "Unknown request type.", null);
     }
 
+    // Applies a delta push on top of the version it was computed from. A push from any other version
+    // would leave the tasks in between out, so it is refused and the client sends everything again.
+    private TaskSyncResponse applyChanges(String user, TaskSyncRequest request) {
+        List<Task> changed = request.getTasks() == null ? List.of() : request.getTasks();
+        List<Integer> deletedTaskIds = request.getDeletedTaskIds();
+        int taskCount = store.applyChanges(user, request.getBaseVersion(), request.getVersion(), request.isReset(),
+            changed, deletedTaskIds);
+        if (taskCount == SyncedTaskStore.UNKNOWN_VERSION) {
+            return new TaskSyncResponse(false, "Full resync required.", null, TaskSyncResponse.RESYNC_REQUIRED);
+        }
+
+        System.out.printf("Applied %d change(s) and %d deletion(s) for %s%s; now at version %d.%n", changed.size(),
+            deletedTaskIds.size(), describe(user), request.isReset() ? " as a full resync" : "", request.getVersion());
+
+        return new TaskSyncResponse(true, "Sync completed. " + taskCount + " tasks on the server.", null,
+            request.getVersion());
+    }
+
+    private static String describe(String user) {
+        return SyncedTaskStore.DEFAULT_USER.equals(user) ? "an unnamed user" : "user " + user;
+    }
+
     // Report generation for the last synchronized tasks.
     private String buildCsvReport(List<Task> tasks) {
         int total = tasks.size();
@@ -134,7 +388,14 @@ public class TaskSyncServer {
         return "\"" + escaped + "\"";
     }
 
+    // -Dtodo.syncMaxConnections=N caps how many clients are served at once, -Dtodo.syncMaxTasks=N how many
+    // tasks are held for all users together and -Dtodo.syncIdleMinutes=N how long an idle user is kept.
     public static void main(String[] args) throws IOException {
-        new TaskSyncServer(DEFAULT_PORT).start();
+        TaskSyncServer server = new TaskSyncServer(DEFAULT_PORT,
+            Integer.getInteger("todo.syncMaxConnections", DEFAULT_MAX_CONNECTIONS),
+            Long.getLong("todo.syncMaxTasks", SyncedTaskStore.DEFAULT_MAX_TASKS),
+            Duration.ofMinutes(Long.getLong("todo.syncIdleMinutes", SyncedTaskStore.DEFAULT_IDLE_EVICTION.toMinutes())));
+        Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+        server.start();
     }
 }
@@ -0,0 +1,132 @@
+package com.example.todo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.PushbackInputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+// One keep-alive connection to the sync server. Requests are written as soon as they are sent, each
+// under its own id, and a reader thread completes the request whose id a response carries, whatever
+// order the responses arrive in. Once the connection fails, every request still waiting fails with it
+// and the session is not used again.
+final class TaskSyncSession implements AutoCloseable {
+    private static final int HANDSHAKE_TIMEOUT_MILLIS = 10_000;
+    private static final AtomicInteger READER_IDS = new AtomicInteger();
+
+    private final Socket socket;
+    private final BufferedOutputStream output;
+    private final PushbackInputStream input;
+    private final TaskWireCodec writer = new TaskWireCodec(TaskWireCodec.VERSION);
+    private final TaskWireCodec reader = new TaskWireCodec(TaskWireCodec.VERSION);
+    private final Map<Integer, CompletableFuture<TaskSyncResponse>> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger requestIds = new AtomicInteger();
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    private volatile long lastUsedNanos = System.nanoTime();
+
+    private TaskSyncSession(Socket socket, BufferedOutputStream output, PushbackInputStream input) {
+        this.socket = socket;
+        this.output = output;
+        this.input = input;
+    }
+
+    // Null when the server is older than this protocol version; such servers all speak Java serialization.
+    static TaskSyncSession open(String host, int port) throws IOException {
+        Socket socket = new Socket(host, port);
+        try {
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT_MILLIS);
+            BufferedOutputStream output = new BufferedOutputStream(socket.getOutputStream());
+            TaskWireCodec.writePreamble(output, TaskWireCodec.VERSION);
+            output.flush();
+            PushbackInputStream input = new PushbackInputStream(new BufferedInputStream(socket.getInputStream()), 2);
+            if (TaskWireCodec.isJavaSerialization(input)
+                || TaskWireCodec.readPreamble(input) < TaskWireCodec.VERSION) {
+                socket.close();
+                return null;
+            }
+            socket.setSoTimeout(0);
+            TaskSyncSession session = new TaskSyncSession(socket, output, input);
+            Thread thread = new Thread(session::readResponses, "todo-sync-session-" + READER_IDS.incrementAndGet());
+            thread.setDaemon(true);
+            thread.start();
+            return session;
+        } catch (IOException | RuntimeException ex) {
+            socket.close();
+            throw ex;
+        }
+    }
+
+    CompletableFuture<TaskSyncResponse> send(TaskSyncRequest request) {
+        CompletableFuture<TaskSyncResponse> response = new CompletableFuture<>();
+        int requestId = requestIds.incrementAndGet();
+        pending.put(requestId, response);
+        lastUsedNanos = System.nanoTime();
+        try {
+            synchronized (writer) {
+                IOException failed = failure.get();
+                if (failed != null) {
+                    throw failed;
+                }
+                writer.writeRequest(output, requestId, request);
+                output.flush();
+            }
+        } catch (IOException ex) {
+            fail(ex);
+        }
+        return response;
+    }
+
+    // Requests sent and not answered yet.
+    int inFlight() {
+        return pending.size();
+    }
+
+    // Open, and either busy or used recently enough that the server has not timed it out.
+    boolean isUsable(long idleLimitNanos) {
+        return failure.get() == null && (!pending.isEmpty() || System.nanoTime() - lastUsedNanos < idleLimitNanos);
+    }
+
+    @Override
+    public void close() {
+        fail(new IOException("Sync session closed."));
+    }
+
+    private void readResponses() {
+        try {
+            while (true) {
+                TaskSyncResponse response = reader.readResponse(input);
+                lastUsedNanos = System.nanoTime();
+                CompletableFuture<TaskSyncResponse> request = pending.remove(reader.requestId());
+                if (request != null) {
+                    request.complete(response);
+                }
+            }
+        } catch (IOException ex) {
+            fail(ex);
+        }
+    }
+
+    // Requests sent after this see the failure in send(); the ones already waiting are failed here.
+    private void fail(IOException cause) {
+        failure.compareAndSet(null, cause);
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // The session is being thrown away either way.
+        }
+        List<Integer> waiting = new ArrayList<>(pending.keySet());
+        for (Integer requestId : waiting) {
+            CompletableFuture<TaskSyncResponse> request = pending.remove(requestId);
+            if (request != null) {
+                request.completeExceptionally(failure.get());
+            }
+        }
+    }
+}
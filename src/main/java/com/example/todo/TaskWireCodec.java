@@ -0,0 +1,434 @@
+package com.example.todo;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// Binary format of the sync protocol. Each side opens its stream with 'T' 'S' and a version byte and
+// then sends frames: a varint payload length followed by the payload. Ints are unsigned varints,
+// strings are a varint of their UTF-8 length plus one (zero for null) followed by the bytes, and a
+// task's status and completed flag share one byte. A stream that opens with 0xAC 0xED is Java
+// serialization instead, which older peers still speak.
+//
+// Version 1 carries one request and its response per connection. In version 2 the connection stays
+// open for a session and every payload starts with a varint request id, so responses can be matched
+// to requests however they are ordered. Version 3 adds delta pushes and a change version on every
+// response, and version 4 the user every request is for. The server answers with the lower of the
+// two versions.
+//
+// An instance reuses one buffer for every frame it encodes or decodes, so it belongs to one
+// connection or one thread at a time.
+final class TaskWireCodec {
+    static final int SINGLE_REQUEST_VERSION = 1;
+    static final int SESSION_VERSION = 2;
+    static final int DELTA_VERSION = 3;
+    static final int USER_VERSION = 4;
+    static final int VERSION = USER_VERSION;
+    private static final int MAGIC_0 = 'T';
+    private static final int MAGIC_1 = 'S';
+    private static final int JAVA_MAGIC_0 = 0xAC;
+    private static final int JAVA_MAGIC_1 = 0xED;
+    private static final int MAX_FRAME_SIZE = 64 * 1024 * 1024;
+    private static final int INITIAL_BUFFER_SIZE = 4 * 1024;
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    // Request types; OTHER_REQUEST carries the type name for anything else.
+    private static final int OTHER_REQUEST = 0;
+    private static final int PUSH_TASKS = 1;
+    private static final int GET_REPORT_CSV = 2;
+    private static final int PUSH_CHANGES = 3;
+
+    private static final int COMPLETED_FLAG = 0x80;
+    private static final int NO_STATUS = 0x7F;
+    private static final TaskStatus[] STATUSES = TaskStatus.values();
+
+    private final boolean requestIds;
+    private final boolean changeVersions;
+    private final boolean users;
+    private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private int requestId;
+
+    TaskWireCodec() {
+        this(SINGLE_REQUEST_VERSION);
+    }
+
+    TaskWireCodec(int version) {
+        this.requestIds = version >= SESSION_VERSION;
+        this.changeVersions = version >= DELTA_VERSION;
+        this.users = version >= USER_VERSION;
+    }
+
+    static void writePreamble(OutputStream out, int version) throws IOException {
+        out.write(MAGIC_0);
+        out.write(MAGIC_1);
+        out.write(version);
+    }
+
+    // Looks at the first two bytes without consuming them: true when the peer speaks Java serialization.
+    static boolean isJavaSerialization(PushbackInputStream in) throws IOException {
+        int first = in.read();
+        if (first < 0) {
+            throw new EOFException("Sync peer closed the connection");
+        }
+        int second = in.read();
+        if (second >= 0) {
+            in.unread(second);
+        }
+        in.unread(first);
+        return first == JAVA_MAGIC_0 && second == JAVA_MAGIC_1;
+    }
+
+    // Consumes the peer's preamble and returns its version.
+    static int readPreamble(InputStream in) throws IOException {
+        int first = in.read();
+        int second = in.read();
+        int version = in.read();
+        if (first != MAGIC_0 || second != MAGIC_1 || version < 0) {
+            throw new StreamCorruptedException("Not a task sync stream");
+        }
+        return version;
+    }
+
+    // Id of the frame read last; always zero in version 1.
+    int requestId() {
+        return requestId;
+    }
+
+    void writeRequest(OutputStream out, TaskSyncRequest request) throws IOException {
+        writeRequest(out, 0, request);
+    }
+
+    void writeRequest(OutputStream out, int requestId, TaskSyncRequest request) throws IOException {
+        startFrame(requestId);
+        String type = request.getType();
+        if (users) {
+            putString(request.getUser());
+        }
+        if ("PUSH_TASKS".equals(type)) {
+            putByte(PUSH_TASKS);
+        } else if ("GET_REPORT_CSV".equals(type)) {
+            putByte(GET_REPORT_CSV);
+        } else if (changeVersions && "PUSH_CHANGES".equals(type)) {
+            putByte(PUSH_CHANGES);
+            putByte(request.isReset() ? 1 : 0);
+            putVarlong(request.getBaseVersion());
+            putVarlong(request.getVersion());
+        } else {
+            putByte(OTHER_REQUEST);
+            putString(type);
+        }
+        putTasks(request.getTasks());
+        if (changeVersions && "PUSH_CHANGES".equals(type)) {
+            List<Integer> deletedTaskIds = request.getDeletedTaskIds();
+            putVarint(deletedTaskIds.size());
+            for (int taskId : deletedTaskIds) {
+                putVarint(taskId);
+            }
+        }
+        writeFrame(out);
+    }
+
+    TaskSyncRequest readRequest(InputStream in) throws IOException {
+        readFrame(in);
+        String user = users ? getString() : null;
+        int code = getByte();
+        if (changeVersions && code == PUSH_CHANGES) {
+            boolean reset = getByte() != 0;
+            long baseVersion = getVarlong();
+            long version = getVarlong();
+            List<Task> tasks = getTasks();
+            int deletions = getVarint();
+            if (deletions < 0 || deletions > limit - position) {
+                throw new StreamCorruptedException("Deletion count runs past the end of the frame");
+            }
+            List<Integer> deletedTaskIds = new ArrayList<>(deletions);
+            for (int i = 0; i < deletions; i++) {
+                deletedTaskIds.add(getVarint());
+            }
+            finishFrame();
+            return TaskSyncRequest.pushChanges(user, baseVersion, version, reset, tasks, deletedTaskIds);
+        }
+        String type = switch (code) {
+            case PUSH_TASKS -> "PUSH_TASKS";
+            case GET_REPORT_CSV -> "GET_REPORT_CSV";
+            case OTHER_REQUEST -> getString();
+            default -> throw new StreamCorruptedException("Unknown request code " + code);
+        };
+        List<Task> tasks = getTasks();
+        finishFrame();
+        return new TaskSyncRequest(user, type, tasks);
+    }
+
+    void writeResponse(OutputStream out, TaskSyncResponse response) throws IOException {
+        writeResponse(out, 0, response);
+    }
+
+    void writeResponse(OutputStream out, int requestId, TaskSyncResponse response) throws IOException {
+        startFrame(requestId);
+        putByte(response.isOk() ? 1 : 0);
+        putString(response.getMessage());
+        putString(response.getCsv());
+        if (changeVersions) {
+            putVarlong(response.getVersion());
+        }
+        writeFrame(out);
+    }
+
+    TaskSyncResponse readResponse(InputStream in) throws IOException {
+        readFrame(in);
+        boolean ok = getByte() != 0;
+        String message = getString();
+        String csv = getString();
+        long version = changeVersions ? getVarlong() : 0;
+        finishFrame();
+        return new TaskSyncResponse(ok, message, csv, version);
+    }
+
+    // Count plus one, so that a missing list and an empty one stay apart.
+    private void putTasks(List<Task> tasks) {
+        if (tasks == null) {
+            putVarint(0);
+            return;
+        }
+        putVarint(tasks.size() + 1);
+        for (Task task : tasks) {
+            putTask(task);
+        }
+    }
+
+    private List<Task> getTasks() throws IOException {
+        int count = getVarint();
+        if (count <= 0) {
+            return null;
+        }
+        List<Task> tasks = new ArrayList<>(Math.min(count - 1, limit));
+        for (int i = 0; i < count - 1; i++) {
+            tasks.add(getTask());
+        }
+        return tasks;
+    }
+
+    private void putTask(Task task) {
+        putVarint(task.id());
+        putString(task.title());
+        putString(task.notes());
+        putString(task.dueDate());
+        putString(task.createdAt());
+        int status = task.status() == null ? NO_STATUS : task.status().ordinal();
+        putByte(task.completed() ? status | COMPLETED_FLAG : status);
+    }
+
+    private Task getTask() throws IOException {
+        int id = getVarint();
+        String title = getString();
+        String notes = getString();
+        String dueDate = getString();
+        String createdAt = getString();
+        int flags = getByte();
+        int status = flags & ~COMPLETED_FLAG;
+        if (status != NO_STATUS && status >= STATUSES.length) {
+            throw new StreamCorruptedException("Unknown task status " + status);
+        }
+        return new Task(id, title, notes, dueDate, (flags & COMPLETED_FLAG) != 0, createdAt,
+            status == NO_STATUS ? null : STATUSES[status]);
+    }
+
+    private void startFrame(int requestId) {
+        position = 0;
+        if (requestIds) {
+            putVarint(requestId);
+        }
+    }
+
+    private void writeFrame(OutputStream out) throws IOException {
+        int length = position;
+        while ((length & ~0x7F) != 0) {
+            out.write((length & 0x7F) | 0x80);
+            length >>>= 7;
+        }
+        out.write(length);
+        out.write(buffer, 0, position);
+        shrinkBuffer();
+    }
+
+    private void readFrame(InputStream in) throws IOException {
+        int length = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Sync peer closed the connection mid-frame");
+            }
+            if (shift > 28) {
+                throw new StreamCorruptedException("Frame length is not a valid varint");
+            }
+            length |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        if (length < 0 || length > MAX_FRAME_SIZE) {
+            throw new StreamCorruptedException("Frame of " + length + " bytes exceeds the limit");
+        }
+        ensureCapacity(length);
+        if (in.readNBytes(buffer, 0, length) != length) {
+            throw new EOFException("Sync peer closed the connection mid-frame");
+        }
+        position = 0;
+        limit = length;
+        requestId = requestIds ? getVarint() : 0;
+    }
+
+    private void finishFrame() throws IOException {
+        if (position != limit) {
+            throw new StreamCorruptedException((limit - position) + " unread bytes at the end of a frame");
+        }
+        shrinkBuffer();
+    }
+
+    // One oversized frame should not pin its buffer for the rest of the connection.
+    private void shrinkBuffer() {
+        if (buffer.length > MAX_RETAINED_BUFFER_SIZE) {
+            buffer = new byte[INITIAL_BUFFER_SIZE];
+        }
+    }
+
+    private void putByte(int value) {
+        ensureCapacity(position + 1);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putVarint(int value) {
+        ensureCapacity(position + 5);
+        while ((value & ~0x7F) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    // Zigzag, so that small negative versions stay short.
+    private void putVarlong(long value) {
+        ensureCapacity(position + 10);
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        buffer[position++] = (byte) zigzag;
+    }
+
+    // Encodes straight into the buffer; unpaired surrogates become '?', as String.getBytes does.
+    private void putString(String value) {
+        if (value == null) {
+            putVarint(0);
+            return;
+        }
+        int chars = value.length();
+        int utf8Length = 0;
+        for (int i = 0; i < chars; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                utf8Length++;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1))) {
+                utf8Length += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                utf8Length++;
+            } else {
+                utf8Length += 3;
+            }
+        }
+        if (utf8Length == Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("String is too long for the sync protocol");
+        }
+        putVarint(utf8Length + 1);
+        ensureCapacity(position + utf8Length);
+        byte[] bytes = buffer;
+        int p = position;
+        for (int i = 0; i < chars; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes[p++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[p++] = (byte) (0xC0 | (c >> 6));
+                bytes[p++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < chars && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                bytes[p++] = (byte) (0xF0 | (codePoint >> 18));
+                bytes[p++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                bytes[p++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                bytes[p++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                bytes[p++] = (byte) '?';
+            } else {
+                bytes[p++] = (byte) (0xE0 | (c >> 12));
+                bytes[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        position = p;
+    }
+
+    private int getByte() throws IOException {
+        if (position >= limit) {
+            throw new StreamCorruptedException("Frame ended early");
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private int getVarint() throws IOException {
+        int value = 0;
+        for (int shift = 0; shift <= 28; shift += 7) {
+            int b = getByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("Malformed varint");
+    }
+
+    private long getVarlong() throws IOException {
+        long zigzag = 0;
+        for (int shift = 0; shift <= 63; shift += 7) {
+            int b = getByte();
+            zigzag |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new StreamCorruptedException("Malformed varlong");
+    }
+
+    private String getString() throws IOException {
+        int length = getVarint();
+        if (length == 0) {
+            return null;
+        }
+        length--;
+        if (length < 0 || length > limit - position) {
+            throw new StreamCorruptedException("String runs past the end of the frame");
+        }
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    private void ensureCapacity(int required) {
+        if (required > buffer.length) {
+            byte[] grown = new byte[Math.max(required, buffer.length * 2)];
+            System.arraycopy(buffer, 0, grown, 0, position);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.todo;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Single writer thread in front of the database. Writes are queued, then committed in groups
+// bounded by count and by time, so concurrent callers never compete for SQLite's write lock.
+// Each write runs under its own savepoint: one failing write does not roll back its group.
+final class TaskWriteQueue implements AutoCloseable {
+    private static final long IDLE_POLL_MILLIS = 100;
+
+    private final Database database;
+    private final BlockingQueue<PendingWrite<?>> queue;
+    private final int maxGroupSize;
+    private final long maxGroupDelayNanos;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    TaskWriteQueue(Database database, int capacity, int maxGroupSize, Duration maxGroupDelay) {
+        this.database = database;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxGroupSize = maxGroupSize;
+        this.maxGroupDelayNanos = maxGroupDelay.toNanos();
+        this.writer = new Thread(this::run, "todo-db-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // Completes once the write has been committed, or exceptionally with an IllegalStateException
+    // carrying failureMessage when the write or its group commit fails. Waits while the queue is full,
+    // but gives up once the queue is closed, since the writer then stops taking writes off it.
+    <T> CompletableFuture<T> submit(String failureMessage, SqlFunction<T> write) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        PendingWrite<T> pending = new PendingWrite<>(failureMessage, write, future);
+        try {
+            while (!closed) {
+                if (queue.offer(pending, IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    // close() may have drained the queue already; whoever removes the write completes it.
+                    if (closed && queue.remove(pending)) {
+                        pending.fail(new SQLException("Write queue closed before the write was committed"));
+                    }
+                    return future;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(new IllegalStateException(failureMessage, ex));
+            return future;
+        }
+        future.completeExceptionally(new IllegalStateException(failureMessage + "; write queue is closed"));
+        return future;
+    }
+
+    // Stops accepting writes, lets the writer commit everything already queued, then exits. Writes
+    // the writer did not get to, or that a racing submit() queued after it exited, are failed.
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        PendingWrite<?> leftover;
+        while ((leftover = queue.poll()) != null) {
+            leftover.fail(new SQLException("Write queue closed before the write was committed"));
+        }
+    }
+
+    private void run() {
+        List<PendingWrite<?>> group = new ArrayList<>(maxGroupSize);
+        while (true) {
+            try {
+                PendingWrite<?> first = queue.poll(IDLE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                group.add(first);
+                collectGroup(group);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            commitGroup(group);
+            group.clear();
+        }
+    }
+
+    private void collectGroup(List<PendingWrite<?>> group) throws InterruptedException {
+        long deadline = System.nanoTime() + maxGroupDelayNanos;
+        while (group.size() < maxGroupSize) {
+            long remaining = deadline - System.nanoTime();
+            PendingWrite<?> next = remaining > 0 ? queue.poll(remaining, TimeUnit.NANOSECONDS) : queue.poll();
+            if (next == null) {
+                return;
+            }
+            group.add(next);
+        }
+    }
+
+    private void commitGroup(List<PendingWrite<?>> group) {
+        List<Runnable> completions = new ArrayList<>(group.size());
+        try (Connection connection = database.connect()) {
+            connection.setAutoCommit(false);
+            for (PendingWrite<?> write : group) {
+                completions.add(write.apply(connection));
+            }
+            connection.commit();
+        } catch (SQLException | RuntimeException ex) {
+            for (PendingWrite<?> write : group) {
+                write.fail(ex);
+            }
+            return;
+        }
+        completions.forEach(Runnable::run);
+    }
+
+    private record PendingWrite<T>(String failureMessage, SqlFunction<T> write, CompletableFuture<T> future) {
+        // Runs the write inside the open group transaction and returns how to complete its future
+        // once the group has been committed.
+        private Runnable apply(Connection connection) throws SQLException {
+            Savepoint savepoint = connection.setSavepoint();
+            try {
+                T result = write.apply(connection);
+                connection.releaseSavepoint(savepoint);
+                return () -> future.complete(result);
+            } catch (SQLException | RuntimeException ex) {
+                connection.rollback(savepoint);
+                connection.releaseSavepoint(savepoint);
+                return () -> fail(ex);
+            }
+        }
+
+        private void fail(Exception cause) {
+            future.completeExceptionally(cause instanceof IllegalStateException
+                ? cause
+                : new IllegalStateException(failureMessage, cause));
+        }
+    }
+}
@@ -7,10 +7,22 @@ import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class ToDoApp {
-    private static final String JDBC_URL = "jdbc:sqlite:todo.db";
+    static final String JDBC_URL = "jdbc:sqlite:todo.db";
+    static final String SHARD_JDBC_URL_PATTERN = "jdbc:sqlite:todo-%d.db";
+    private static final int ARCHIVE_AFTER_DAYS = 30;
+    private static final int TOMBSTONE_RETENTION_DAYS = 30;
+    private static final int COMPACT_PAGES_PER_STEP = 256;
+    private static final int BACKUP_EVERY_HOURS = 24;
+    private static final int BACKUPS_KEPT = 7;
     static final Color BACKGROUND = new Color(245, 246, 250);
     static final Color PANEL = new Color(255, 255, 255);
     static final Color ACCENT = new Color(92, 103, 242);
@@ -18,14 +30,106 @@ public class ToDoApp {
     static final Color TEXT_SECONDARY = new Color(108, 112, 132);
 
     public static void main(String[] args) {
-        Database database = new Database(JDBC_URL);
-        database.initialize();
-
-        ToDoRepository repository = new ToDoRepository(database);
+        // -Dtodo.snapshot=FILE runs on the in-memory store instead of SQLite, loading FILE at start
+        // (when it exists) and saving it on exit.
+        // -Dtodo.journal=DIR keeps it in memory too, but journals every change to DIR as it happens.
+        String snapshot = System.getProperty("todo.snapshot");
+        String journal = System.getProperty("todo.journal");
+        TaskStore repository;
+        Runnable closeStore;
+        ShardedDatabase database = null;
+        if (journal != null) {
+            JournaledTaskStore store = JournaledTaskStore.open(Path.of(journal));
+            repository = store;
+            closeStore = store::close;
+        } else if (snapshot != null) {
+            Path snapshotPath = Path.of(snapshot);
+            InMemoryTaskStore store = Files.exists(snapshotPath)
+                ? InMemoryTaskStore.loadSnapshot(snapshotPath)
+                : new InMemoryTaskStore();
+            repository = store;
+            closeStore = () -> store.saveSnapshot(snapshotPath);
+        } else {
+            database = openDatabase();
+            repository = new CachedToDoRepository(database);
+            closeStore = database::close;
+        }
+
+        AsyncToDoRepository asyncRepository = new AsyncToDoRepository(repository);
+        ScheduledExecutorService archiver = startArchiver(repository);
+        if (database != null) {
+            scheduleDatabaseMaintenance(archiver, database);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            archiver.shutdownNow();
+            asyncRepository.close();
+            closeStore.run();
+        }));
         SwingUtilities.invokeLater(() -> {
             configureLookAndFeel();
-            new ToDoWindow(repository).show();
+            new ToDoWindow(asyncRepository).show();
+        });
+    }
+
+    // -Dtodo.shards=N spreads users over N files; move an existing todo.db with DatabaseMaintenance reshard.
+    private static ShardedDatabase openDatabase() {
+        int shardCount = Integer.getInteger("todo.shards", 1);
+        ShardedDatabase database = shardCount > 1
+            ? new ShardedDatabase(SHARD_JDBC_URL_PATTERN, shardCount)
+            : ShardedDatabase.single(new Database(JDBC_URL));
+        database.initialize();
+        return database;
+    }
+
+    // Hourly background job that moves long-finished tasks out of the board and drops old delete
+    // tombstones; -Dtodo.archiveAfterDays sets how long a task stays in the DONE column.
+    private static ScheduledExecutorService startArchiver(TaskStore repository) {
+        Duration archiveAfter = Duration.ofDays(Integer.getInteger("todo.archiveAfterDays", ARCHIVE_AFTER_DAYS));
+        ScheduledExecutorService archiver = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "todo-archiver");
+            thread.setDaemon(true);
+            return thread;
         });
+        archiver.scheduleWithFixedDelay(() -> {
+            try {
+                repository.archiveCompletedTasks(archiveAfter);
+                repository.compactTombstones(Duration.ofDays(TOMBSTONE_RETENTION_DAYS));
+            } catch (RuntimeException ex) {
+                System.err.println("Failed to archive tasks: " + ex.getMessage());
+            }
+        }, 1, 60, TimeUnit.MINUTES);
+        return archiver;
+    }
+
+    // SQLite only: hourly compaction of the space freed by deletes and archiving and, with
+    // -Dtodo.backupDir=DIR, a verified backup of every shard each -Dtodo.backupEveryHours hours.
+    // Both share the archiver's thread, so they never overlap with an archive run.
+    private static void scheduleDatabaseMaintenance(ScheduledExecutorService archiver, ShardedDatabase database) {
+        archiver.scheduleWithFixedDelay(() -> {
+            for (Database shard : database.shards()) {
+                try {
+                    shard.compact(COMPACT_PAGES_PER_STEP);
+                } catch (RuntimeException ex) {
+                    System.err.println("Failed to compact database: " + ex.getMessage());
+                }
+            }
+        }, 5, 60, TimeUnit.MINUTES);
+        String backupDir = System.getProperty("todo.backupDir");
+        if (backupDir == null) {
+            return;
+        }
+        long backupEvery = TimeUnit.HOURS.toMinutes(Integer.getInteger("todo.backupEveryHours", BACKUP_EVERY_HOURS));
+        archiver.scheduleWithFixedDelay(() -> {
+            List<Database> shards = database.shards();
+            for (int index = 0; index < shards.size(); index++) {
+                String prefix = shards.size() == 1 ? "todo" : "todo-" + index;
+                try {
+                    DatabaseBackups.backup(shards.get(index), Path.of(backupDir), prefix, BACKUPS_KEPT);
+                } catch (RuntimeException ex) {
+                    System.err.println("Failed to back up database: " + ex.getMessage());
+                }
+            }
+        }, 10, backupEvery, TimeUnit.MINUTES);
     }
 
     private static void configureLookAndFeel() {
@@ -43,7 +147,10 @@ public class ToDoApp {
     }
 
     private static final class ToDoWindow {
-        private final ToDoRepository repository;
+        private final AsyncToDoRepository asyncRepository;
+        // Kept for the whole window, so repeated syncs and downloads reuse their connections.
+        private final TaskSyncClient syncClient = new TaskSyncClient("localhost", TaskSyncClient.DEFAULT_PORT,
+            TaskSyncClient.DEFAULT_KEEP_ALIVE_CONNECTIONS);
         private final JFrame frame;
         private final JLabel greetingLabel;
         private final JLabel statsLabel;
@@ -51,9 +158,12 @@ public class ToDoApp {
         private final JLabel goalLabel;
         private final TaskBoardPanel taskBoard;
         private User activeUser;
+        private long refreshSequence;
+        // Change version the sync server acknowledged last, per user; only touched on the event thread.
+        private final Map<Integer, Long> syncedVersions = new HashMap<>();
 
-        private ToDoWindow(ToDoRepository repository) {
-            this.repository = repository;
+        private ToDoWindow(AsyncToDoRepository asyncRepository) {
+            this.asyncRepository = asyncRepository;
             frame = new JFrame("Daily Tasks");
             frame.setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
             frame.setMinimumSize(new Dimension(920, 620));
@@ -83,7 +193,7 @@ public class ToDoApp {
             JPanel listCard = new JPanel(new BorderLayout());
             listCard.setBackground(PANEL);
             listCard.setBorder(new EmptyBorder(24, 24, 24, 24));
-            taskBoard = new TaskBoardPanel(repository, this::refresh);
+            taskBoard = new TaskBoardPanel(asyncRepository, this::refresh);
             listCard.add(taskBoard, BorderLayout.CENTER);
 
             JPanel actions = createActions();
@@ -187,31 +297,38 @@ public class ToDoApp {
         }
 
         private void show() {
-            User user = promptForUser();
-            if (user == null) {
-                return;
-            }
-            activeUser = user;
-            refresh();
-            frame.setLocationRelativeTo(null);
-            frame.setVisible(true);
+            promptForUser(user -> {
+                activeUser = user;
+                refresh();
+                frame.setLocationRelativeTo(null);
+                frame.setVisible(true);
+            });
         }
 
-        private User promptForUser() {
+        // Looks the user up, or creates them, off the EDT; onUser runs back on the EDT. A failed lookup
+        // shows the error and asks again, and cancelling closes the window as before.
+        private void promptForUser(java.util.function.Consumer<User> onUser) {
+            String name;
             while (true) {
-                String name = JOptionPane.showInputDialog(frame, "Enter your name", "Welcome", JOptionPane.PLAIN_MESSAGE);
+                name = JOptionPane.showInputDialog(frame, "Enter your name", "Welcome", JOptionPane.PLAIN_MESSAGE);
                 if (name == null) {
                     frame.dispose();
-                    return null;
+                    return;
                 }
                 name = name.trim();
-                if (name.isEmpty()) {
-                    JOptionPane.showMessageDialog(frame, "Name cannot be empty.", "Try Again", JOptionPane.WARNING_MESSAGE);
-                    continue;
+                if (!name.isEmpty()) {
+                    break;
                 }
-                User user = repository.ensureUser(name);
-                return maybePersonalizeProfile(user);
+                JOptionPane.showMessageDialog(frame, "Name cannot be empty.", "Try Again", JOptionPane.WARNING_MESSAGE);
             }
+            asyncRepository.ensureUser(name).whenComplete((user, error) -> SwingUtilities.invokeLater(() -> {
+                if (error != null) {
+                    showDatabaseError("Could not load user", error);
+                    promptForUser(onUser);
+                    return;
+                }
+                onUser.accept(maybePersonalizeProfile(user));
+            }));
         }
 
         private User maybePersonalizeProfile(User user) {
@@ -226,13 +343,29 @@ public class ToDoApp {
                 JOptionPane.QUESTION_MESSAGE
             );
             if (response == JOptionPane.YES_OPTION) {
-                return showProfileDialog(user);
+                showProfileDialog(user);
             }
             return user;
         }
 
+        // Loads the board off the EDT; a result is dropped if a newer refresh started meanwhile.
         private void refresh() {
-            TaskStats stats = repository.fetchStats(activeUser.id());
+            long sequence = ++refreshSequence;
+            User user = activeUser;
+            asyncRepository.fetchBoard(user.id()).whenComplete((board, error) -> SwingUtilities.invokeLater(() -> {
+                if (sequence != refreshSequence || user != activeUser) {
+                    return;
+                }
+                if (error != null) {
+                    showDatabaseError("Could not load tasks", error);
+                    return;
+                }
+                showBoard(board);
+            }));
+        }
+
+        private void showBoard(Board board) {
+            TaskStats stats = board.stats();
             greetingLabel.setText(String.format("Welcome back, %s", activeUser.greetingName()));
             statsLabel.setText(String.format("%d tasks · %d completed · %d remaining",
                 stats.total(),
@@ -252,7 +385,7 @@ public class ToDoApp {
                 goalLabel.setText("Set a daily goal to keep momentum");
             }
 
-            taskBoard.refresh(activeUser.id());
+            taskBoard.refresh(activeUser.id(), board);
         }
 
         private void addTask() {
@@ -263,8 +396,13 @@ public class ToDoApp {
                     JOptionPane.showMessageDialog(frame, "Task title cannot be empty.", "Missing info", JOptionPane.WARNING_MESSAGE);
                     return;
                 }
-                repository.addTask(activeUser.id(), form.title(), form.notes(), form.dueDate());
-                refresh();
+                asyncRepository.addTask(activeUser.id(), form.title(), form.notes(), form.dueDate())
+                    .whenComplete((task, error) -> SwingUtilities.invokeLater(() -> {
+                        if (error != null) {
+                            showDatabaseError("Task could not be added", error);
+                        }
+                        refresh();
+                    }));
             }
         }
 
@@ -275,12 +413,15 @@ public class ToDoApp {
                 return;
             }
             TaskStatus status = completed ? TaskStatus.DONE : TaskStatus.TODO;
-            boolean updated = repository.updateTaskStatus(activeUser.id(), selected.id(), status);
-            if (updated) {
-                refresh();
-            } else {
-                JOptionPane.showMessageDialog(frame, "Task could not be updated.", "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            asyncRepository.updateTaskStatus(activeUser.id(), selected.id(), status)
+                .whenComplete((updated, error) -> SwingUtilities.invokeLater(() -> {
+                    if (error != null) {
+                        showDatabaseError("Task could not be updated", error);
+                    } else if (!updated) {
+                        JOptionPane.showMessageDialog(frame, "Task could not be updated.", "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                    refresh();
+                }));
         }
 
         private void deleteTask() {
@@ -297,52 +438,104 @@ public class ToDoApp {
                 JOptionPane.WARNING_MESSAGE
             );
             if (response == JOptionPane.YES_OPTION) {
-                repository.deleteTask(activeUser.id(), selected.id());
-                refresh();
+                asyncRepository.deleteTask(activeUser.id(), selected.id())
+                    .whenComplete((deleted, error) -> SwingUtilities.invokeLater(() -> {
+                        if (error != null) {
+                            showDatabaseError("Task could not be deleted", error);
+                        }
+                        refresh();
+                    }));
             }
         }
 
         private void updateProfile() {
-            activeUser = showProfileDialog(activeUser);
-            refresh();
+            showProfileDialog(activeUser);
         }
 
-        private User showProfileDialog(User user) {
+        // Saves off the EDT. The saved profile only replaces activeUser if no other user was
+        // switched to meanwhile.
+        private void showProfileDialog(User user) {
             ProfileForm form = ProfileForm.from(user);
             int result = form.showDialog(frame, "Update profile");
-            if (result == JOptionPane.OK_OPTION) {
-                return repository.updateProfile(user.id(), form.displayName(), form.focusArea(), form.dailyGoal());
+            if (result != JOptionPane.OK_OPTION) {
+                return;
             }
-            return user;
+            asyncRepository.updateProfile(user.id(), form.displayName(), form.focusArea(), form.dailyGoal())
+                .whenComplete((updated, error) -> SwingUtilities.invokeLater(() -> {
+                    if (error != null) {
+                        showDatabaseError("Profile could not be updated", error);
+                    } else if (activeUser != null && activeUser.id() == updated.id()) {
+                        activeUser = updated;
+                    }
+                    refresh();
+                }));
         }
 
         private void switchUser() {
-            User user = promptForUser();
-            if (user != null) {
+            promptForUser(user -> {
                 activeUser = user;
                 refresh();
-            }
+            });
         }
 
+        // Pushes only what changed since the server last acknowledged this user's tasks. The first sync,
+        // and any the server refuses because it no longer holds that version, push everything.
         private void syncTasks() {
-            List<Task> tasks = repository.fetchTasks(activeUser.id());
-            TaskSyncClient client = new TaskSyncClient("localhost", TaskSyncClient.DEFAULT_PORT);
-            try {
-                client.syncTasks(tasks);
-                JOptionPane.showMessageDialog(frame, "Sync completed successfully", "Sync", JOptionPane.INFORMATION_MESSAGE);
-            } catch (java.net.ConnectException ex) {
-                showServerUnavailableMessage();
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(frame, "Sync failed: " + ex.getMessage(), "Sync Error", JOptionPane.ERROR_MESSAGE);
-            }
+            syncTasks(activeUser.id(), activeUser.name());
+        }
+
+        private void syncTasks(int userId, String userName) {
+            long acknowledged = syncedVersions.getOrDefault(userId, TaskSyncClient.NOT_SYNCED);
+            asyncRepository.fetchTasksChangedSince(userId, Math.max(acknowledged, 0)).whenComplete((changes, error) -> SwingUtilities.invokeLater(() -> {
+                if (error != null) {
+                    showDatabaseError("Could not load tasks", error);
+                    return;
+                }
+                pushChanges(userId, userName, acknowledged, changes);
+            }));
+        }
+
+        // The push runs in the background; syncedVersions is only touched back on the EDT, in done().
+        private void pushChanges(int userId, String userName, long acknowledged, TaskChanges changes) {
+            SwingWorker<Long, Void> worker = new SwingWorker<>() {
+                @Override
+                protected Long doInBackground() throws Exception {
+                    return syncClient.pushChanges(userName, acknowledged, changes);
+                }
+
+                @Override
+                protected void done() {
+                    try {
+                        long version = get();
+                        if (version == TaskSyncClient.RESYNC_REQUIRED) {
+                            syncedVersions.remove(userId);
+                            syncTasks(userId, userName);
+                            return;
+                        }
+                        syncedVersions.put(userId, version);
+                        JOptionPane.showMessageDialog(frame, "Sync completed successfully", "Sync", JOptionPane.INFORMATION_MESSAGE);
+                    } catch (java.util.concurrent.ExecutionException ex) {
+                        Throwable cause = ex.getCause();
+                        if (cause instanceof java.net.ConnectException) {
+                            showServerUnavailableMessage();
+                            return;
+                        }
+                        JOptionPane.showMessageDialog(frame, "Sync failed: " + cause.getMessage(), "Sync Error", JOptionPane.ERROR_MESSAGE);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        JOptionPane.showMessageDialog(frame, "Sync interrupted.", "Sync Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                }
+            };
+            worker.execute();
         }
 
         private void downloadReport() {
-            TaskSyncClient client = new TaskSyncClient("localhost", TaskSyncClient.DEFAULT_PORT);
+            String userName = activeUser.name();
             SwingWorker<Void, Void> worker = new SwingWorker<>() {
                 @Override
                 protected Void doInBackground() throws Exception {
-                    String csv = client.downloadReportCsv();
+                    String csv = syncClient.downloadReportCsv(userName);
                     saveCsvReport(csv);
                     return null;
                 }
@@ -384,6 +577,16 @@ public class ToDoApp {
             JOptionPane.showMessageDialog(frame, "Report saved to:\n" + path, "Report Saved", JOptionPane.INFORMATION_MESSAGE);
         }
 
+        private void showDatabaseError(String message, Throwable error) {
+            Throwable cause = error instanceof java.util.concurrent.CompletionException && error.getCause() != null
+                ? error.getCause()
+                : error;
+            String detail = cause instanceof java.util.concurrent.TimeoutException
+                ? "The database did not respond in time."
+                : cause.getMessage();
+            JOptionPane.showMessageDialog(frame, message + ": " + detail, "Database Error", JOptionPane.ERROR_MESSAGE);
+        }
+
         private void showServerUnavailableMessage() {
             JOptionPane.showMessageDialog(
                 frame,
@@ -428,7 +631,7 @@ public class ToDoApp {
             panel.add(new JLabel("Notes"));
             panel.add(new JScrollPane(notesField));
             panel.add(Box.createVerticalStrut(8));
-            panel.add(new JLabel("Due date"));
+            panel.add(new JLabel("Due date (YYYY-MM-DD)"));
             panel.add(dueDateField);
             panel.setPreferredSize(new Dimension(420, 260));
 
@@ -5,32 +5,119 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
-public class ToDoRepository {
-    private final Database database;
+// SQLite-backed TaskStore. Reads use the read-only pool of the owning shard; task writes go
+// through that shard's single writer queue.
+public class ToDoRepository implements TaskStore {
+    // Keyset paging runs over (due_date, created_at, id) with NULL due dates first, matching SQLite's
+    // ascending order. The NULL and non-NULL segments are read separately so each stays an index range.
+    private static final String PAGE_NO_DUE_DATE_SQL =
+        "SELECT id, title, notes, due_date, completed, created_at, status FROM tasks "
+            + "WHERE user_id = ? AND due_date IS NULL AND (created_at, id) > (?, ?) "
+            + "ORDER BY created_at, id LIMIT ?";
+    private static final String PAGE_WITH_DUE_DATE_SQL =
+        "SELECT id, title, notes, due_date, completed, created_at, status FROM tasks "
+            + "WHERE user_id = ? AND due_date IS NOT NULL AND (due_date, created_at, id) > (?, ?, ?) "
+            + "ORDER BY due_date, created_at, id LIMIT ?";
+
+    private static final String INSERT_TASK_SQL =
+        "INSERT INTO tasks(user_id, title, notes, due_date, due_day, completed, status) VALUES (?, ?, ?, ?, ?, ?, ?) "
+            + "RETURNING id, title, notes, due_date, completed, created_at, status";
+    private static final String UPDATE_STATUS_SQL =
+        "UPDATE tasks SET status = ?, completed = ? WHERE id = ? AND user_id = ?";
+    private static final String DELETE_TASK_SQL = "DELETE FROM tasks WHERE id = ? AND user_id = ?";
+
+    // Archived history is paged newest completion first over (completed_at, id).
+    private static final String ARCHIVE_PAGE_SQL =
+        "SELECT id, title, notes, due_date, created_at, completed_at, archived_at FROM archived_tasks "
+            + "WHERE user_id = ? AND (completed_at, id) < (?, ?) ORDER BY completed_at DESC, id DESC LIMIT ?";
+    private static final String ARCHIVE_CANDIDATES_SQL =
+        "SELECT id, user_id FROM tasks WHERE status = 'DONE' AND completed_at < datetime('now', ?) "
+            + "ORDER BY completed_at LIMIT ?";
+    private static final String ARCHIVE_TASK_SQL =
+        "INSERT INTO archived_tasks(user_id, title, notes, due_date, due_day, created_at, completed_at) "
+            + "SELECT user_id, title, notes, due_date, due_day, created_at, completed_at FROM tasks WHERE id = ?";
+    // The restored task gets a new id and a fresh completed_at, so the next archive run leaves it alone.
+    private static final String RESTORE_TASK_SQL =
+        "INSERT INTO tasks(user_id, title, notes, due_date, due_day, completed, status, created_at) "
+            + "SELECT user_id, title, notes, due_date, due_day, 1, 'DONE', created_at FROM archived_tasks "
+            + "WHERE id = ? AND user_id = ? "
+            + "RETURNING id, title, notes, due_date, completed, created_at, status";
+    private static final String CHANGED_TASKS_SQL =
+        "SELECT id, title, notes, due_date, completed, created_at, status FROM tasks "
+            + "WHERE user_id = ? AND version > ? ORDER BY version";
+    private static final String TOMBSTONES_SQL =
+        "SELECT task_id FROM task_tombstones WHERE user_id = ? AND version > ? ORDER BY version";
+    // Raises each user's compacted_version to their newest tombstone about to be dropped.
+    private static final String COMPACTED_VERSION_SQL =
+        "UPDATE users SET compacted_version = MAX(compacted_version, "
+            + "(SELECT MAX(version) FROM task_tombstones WHERE user_id = users.id AND deleted_at < datetime('now', ?))) "
+            + "WHERE id IN (SELECT user_id FROM task_tombstones WHERE deleted_at < datetime('now', ?))";
+    private static final int ARCHIVE_BATCH_SIZE = 200;
+    private static final int DEFAULT_BATCH_SIZE = 500;
+    private static final int USER_CACHE_SIZE = 1_024;
+
+    private final ShardedDatabase shards;
+    private final int batchSize;
+    private final UserCache userCache = new UserCache(USER_CACHE_SIZE);
 
     public ToDoRepository(Database database) {
-        this.database = database;
+        this(database, DEFAULT_BATCH_SIZE);
+    }
+
+    public ToDoRepository(Database database, int batchSize) {
+        this(ShardedDatabase.single(database), batchSize);
+    }
+
+    public ToDoRepository(ShardedDatabase shards) {
+        this(shards, DEFAULT_BATCH_SIZE);
     }
 
+    public ToDoRepository(ShardedDatabase shards, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.shards = shards;
+        this.batchSize = batchSize;
+    }
+
+    // Looks the user up in the cache first; otherwise creates or loads the row in one upsert round trip.
+    // Resolving the existing id inside the statement keeps a repeat login from consuming an id.
+    // New ids continue the shard's stripe from sqlite_sequence; with a single shard that is plain AUTOINCREMENT.
+    @Override
     public User ensureUser(String name) {
-        Optional<User> existing = findUserByName(name);
-        if (existing.isPresent()) {
-            return existing.get();
+        Optional<User> cached = userCache.byName(name);
+        if (cached.isPresent()) {
+            return cached.get();
         }
-        try (Connection connection = database.connect();
+        int shard = shards.shardForName(name);
+        try (Connection connection = shards.shard(shard).connect();
              PreparedStatement statement = connection.prepareStatement(
-                 "INSERT INTO users(name) VALUES (?)",
-                 Statement.RETURN_GENERATED_KEYS
+                 "INSERT INTO users(id, name) VALUES (COALESCE((SELECT id FROM users WHERE name = ?), "
+                     + "(SELECT COALESCE(MAX(seq), ?) + ? FROM sqlite_sequence WHERE name = 'users')), ?) "
+                     + "ON CONFLICT(id) DO UPDATE SET name = excluded.name "
+                     + "RETURNING id, name, display_name, focus_area, daily_goal"
              )) {
             statement.setString(1, name);
-            statement.executeUpdate();
-            try (ResultSet keys = statement.getGeneratedKeys()) {
-                if (keys.next()) {
-                    return new User(keys.getInt(1), name, null, null, null);
+            statement.setInt(2, shard + 1 - shards.shardCount());
+            statement.setInt(3, shards.shardCount());
+            statement.setString(4, name);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    return cacheUser(readUser(resultSet));
                 }
             }
         } catch (SQLException ex) {
@@ -39,33 +126,23 @@ public class ToDoRepository {
         throw new IllegalStateException("Failed to create user; no ID returned");
     }
 
+    @Override
     public Optional<User> findUserByName(String name) {
-        try (Connection connection = database.connect();
-             PreparedStatement statement = connection.prepareStatement(
-                 "SELECT id, name, display_name, focus_area, daily_goal FROM users WHERE name = ?"
-             )) {
-            statement.setString(1, name);
-            try (ResultSet resultSet = statement.executeQuery()) {
-                if (resultSet.next()) {
-                    return Optional.of(new User(
-                        resultSet.getInt("id"),
-                        resultSet.getString("name"),
-                        resultSet.getString("display_name"),
-                        resultSet.getString("focus_area"),
-                        (Integer) resultSet.getObject("daily_goal")
-                    ));
-                }
-            }
-        } catch (SQLException ex) {
-            throw new IllegalStateException("Failed to fetch user", ex);
+        Optional<User> cached = userCache.byName(name);
+        if (cached.isPresent()) {
+            return cached;
         }
-        return Optional.empty();
+        return findUser(shards.forName(name), "SELECT id, name, display_name, focus_area, daily_goal FROM users WHERE name = ?",
+            statement -> statement.setString(1, name));
     }
 
+    @Override
     public User updateProfile(int userId, String displayName, String focusArea, Integer dailyGoal) {
-        try (Connection connection = database.connect();
+        userCache.invalidate(userId);
+        try (Connection connection = database(userId).connect();
              PreparedStatement statement = connection.prepareStatement(
-                 "UPDATE users SET display_name = ?, focus_area = ?, daily_goal = ? WHERE id = ?"
+                 "UPDATE users SET display_name = ?, focus_area = ?, daily_goal = ? WHERE id = ? "
+                     + "RETURNING id, name, display_name, focus_area, daily_goal"
              )) {
             statement.setString(1, displayName == null || displayName.isBlank() ? null : displayName);
             statement.setString(2, focusArea == null || focusArea.isBlank() ? null : focusArea);
@@ -75,29 +152,38 @@ public class ToDoRepository {
                 statement.setInt(3, dailyGoal);
             }
             statement.setInt(4, userId);
-            statement.executeUpdate();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next()) {
+                    return cacheUser(readUser(resultSet));
+                }
+            }
         } catch (SQLException ex) {
             throw new IllegalStateException("Failed to update profile", ex);
         }
-        return findUserById(userId)
-            .orElseThrow(() -> new IllegalStateException("Failed to reload user profile"));
+        throw new IllegalStateException("Failed to reload user profile");
     }
 
-    private Optional<User> findUserById(int userId) {
-        try (Connection connection = database.connect();
-             PreparedStatement statement = connection.prepareStatement(
-                 "SELECT id, name, display_name, focus_area, daily_goal FROM users WHERE id = ?"
-             )) {
-            statement.setInt(1, userId);
+    @Override
+    public Optional<User> findUserById(int userId) {
+        Optional<User> cached = userCache.byId(userId);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        return findUser(database(userId), "SELECT id, name, display_name, focus_area, daily_goal FROM users WHERE id = ?",
+            statement -> statement.setInt(1, userId));
+    }
+
+    public CacheStats userCacheStats() {
+        return userCache.stats();
+    }
+
+    private Optional<User> findUser(Database database, String sql, SqlBinder<PreparedStatement> binder) {
+        try (Connection connection = database.connectForRead();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            binder.bind(statement);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
-                    return Optional.of(new User(
-                        resultSet.getInt("id"),
-                        resultSet.getString("name"),
-                        resultSet.getString("display_name"),
-                        resultSet.getString("focus_area"),
-                        (Integer) resultSet.getObject("daily_goal")
-                    ));
+                    return Optional.of(cacheUser(readUser(resultSet)));
                 }
             }
         } catch (SQLException ex) {
@@ -106,9 +192,19 @@ public class ToDoRepository {
         return Optional.empty();
     }
 
+    private User cacheUser(User user) {
+        userCache.put(user);
+        return user;
+    }
+
+    @Override
     public List<Task> fetchTasks(int userId) {
+        return loadTasks(userId);
+    }
+
+    private List<Task> loadTasks(int userId) {
         List<Task> tasks = new ArrayList<>();
-        try (Connection connection = database.connect();
+        try (Connection connection = database(userId).connectForRead();
              PreparedStatement statement = connection.prepareStatement(
 
                  "SELECT id, title, notes, due_date, completed, created_at, status FROM tasks WHERE user_id = ? ORDER BY completed, due_date, created_at"
@@ -117,15 +213,7 @@ public class ToDoRepository {
             statement.setInt(1, userId);
             try (ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
-                    tasks.add(new Task(
-                        resultSet.getInt("id"),
-                        resultSet.getString("title"),
-                        resultSet.getString("notes"),
-                        resultSet.getString("due_date"),
-                        resultSet.getInt("completed") == 1,
-                        resultSet.getString("created_at"),
-                        TaskStatus.fromDatabase(resultSet.getString("status"))
-                    ));
+                    tasks.add(readTask(resultSet));
                 }
             }
         } catch (SQLException ex) {
@@ -134,9 +222,10 @@ public class ToDoRepository {
         return tasks;
     }
 
+    @Override
     public List<Task> fetchTasksByStatus(int userId, TaskStatus status) {
         List<Task> tasks = new ArrayList<>();
-        try (Connection connection = database.connect();
+        try (Connection connection = database(userId).connectForRead();
              PreparedStatement statement = connection.prepareStatement(
                  "SELECT id, title, notes, due_date, completed, created_at, status FROM tasks WHERE user_id = ? AND status = ? ORDER BY due_date, created_at"
              )) {
@@ -144,15 +233,7 @@ public class ToDoRepository {
             statement.setString(2, status.name());
             try (ResultSet resultSet = statement.executeQuery()) {
                 while (resultSet.next()) {
-                    tasks.add(new Task(
-                        resultSet.getInt("id"),
-                        resultSet.getString("title"),
-                        resultSet.getString("notes"),
-                        resultSet.getString("due_date"),
-                        resultSet.getInt("completed") == 1,
-                        resultSet.getString("created_at"),
-                        TaskStatus.fromDatabase(resultSet.getString("status"))
-                    ));
+                    tasks.add(readTask(resultSet));
                 }
             }
         } catch (SQLException ex) {
@@ -161,74 +242,239 @@ public class ToDoRepository {
         return tasks;
     }
 
-    public void addTask(int userId, String title, String notes, String dueDate) {
-        try (Connection connection = database.connect();
-             PreparedStatement statement = connection.prepareStatement(
-                 "INSERT INTO tasks(user_id, title, notes, due_date, completed, status) VALUES (?, ?, ?, ?, ?, ?)"
+    // Loads all three board columns from a single query over the user's hot tasks, and the stats,
+    // which also count the archive, from the counters row in the same read transaction.
+    @Override
+    public Board fetchBoard(int userId) {
+        return database(userId).readTransaction(() -> loadBoard(userId));
+    }
 
+    private Board loadBoard(int userId) {
+        List<Task> todo = new ArrayList<>();
+        List<Task> doing = new ArrayList<>();
+        List<Task> done = new ArrayList<>();
+        try (Connection connection = database(userId).connectForRead();
+             PreparedStatement statement = connection.prepareStatement(
+                 "SELECT id, title, notes, due_date, completed, created_at, status FROM tasks WHERE user_id = ? ORDER BY status, due_date, created_at"
              )) {
             statement.setInt(1, userId);
-            statement.setString(2, title);
-            statement.setString(3, notes == null || notes.isBlank() ? null : notes);
-            statement.setString(4, dueDate == null || dueDate.isBlank() ? null : dueDate);
-            statement.setInt(5, 0);
-            statement.setString(6, TaskStatus.TODO.name());
-
-            statement.executeUpdate();
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    Task task = readTask(resultSet);
+                    switch (task.status()) {
+                        case TODO -> todo.add(task);
+                        case DOING -> doing.add(task);
+                        case DONE -> done.add(task);
+                    }
+                }
+            }
         } catch (SQLException ex) {
-            throw new IllegalStateException("Failed to add task", ex);
+            throw new IllegalStateException("Failed to fetch board", ex);
         }
+        return new Board(todo, doing, done, fetchStats(userId));
     }
 
-    public boolean markComplete(int userId, int taskId) {
-        return updateTaskStatus(userId, taskId, TaskStatus.DONE);
+    // Returns up to limit tasks that sort after the given task, or from the start when after is null.
+    @Override
+    public List<Task> fetchTasksAfter(int userId, Task after, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        return database(userId).readTransaction(() -> fetchPage(userId, after, limit));
     }
 
-    public boolean markIncomplete(int userId, int taskId) {
-        return updateTaskStatus(userId, taskId, TaskStatus.TODO);
+    private List<Task> fetchPage(int userId, Task after, int limit) {
+        List<Task> page = new ArrayList<>(limit);
+        try (Connection connection = database(userId).connectForRead()) {
+            if (after == null || after.dueDate() == null) {
+                try (PreparedStatement statement = connection.prepareStatement(PAGE_NO_DUE_DATE_SQL)) {
+                    statement.setInt(1, userId);
+                    statement.setString(2, after == null ? "" : after.createdAt());
+                    statement.setInt(3, after == null ? Integer.MIN_VALUE : after.id());
+                    statement.setInt(4, limit);
+                    readInto(statement, page);
+                }
+            }
+            if (page.size() < limit) {
+                boolean fromStart = after == null || after.dueDate() == null;
+                try (PreparedStatement statement = connection.prepareStatement(PAGE_WITH_DUE_DATE_SQL)) {
+                    statement.setInt(1, userId);
+                    statement.setString(2, fromStart ? "" : after.dueDate());
+                    statement.setString(3, fromStart ? "" : after.createdAt());
+                    statement.setInt(4, fromStart ? Integer.MIN_VALUE : after.id());
+                    statement.setInt(5, limit - page.size());
+                    readInto(statement, page);
+                }
+            }
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Failed to fetch task page", ex);
+        }
+        return page;
     }
 
-    public boolean updateTaskStatus(int userId, int taskId, TaskStatus status) {
-        try (Connection connection = database.connect();
-             PreparedStatement statement = connection.prepareStatement(
+    // Open tasks whose due day is before the given day, earliest first.
+    @Override
+    public List<Task> fetchOverdueTasks(int userId, LocalDate today) {
+        return fetchByDueDay(userId,
+            "SELECT id, title, notes, due_date, completed, created_at, status FROM tasks "
+                + "WHERE user_id = ? AND due_day < ? AND status <> 'DONE' ORDER BY due_day, created_at",
+            "Failed to fetch overdue tasks",
+            statement -> {
+                statement.setInt(1, userId);
+                statement.setLong(2, today.toEpochDay());
+            });
+    }
 
-                 "UPDATE tasks SET status = ?, completed = ? WHERE id = ? AND user_id = ?"
-             )) {
-            statement.setString(1, status.name());
-            statement.setInt(2, status == TaskStatus.DONE ? 1 : 0);
+    // Tasks of any status due between from and to, both inclusive.
+    @Override
+    public List<Task> fetchTasksDueBetween(int userId, LocalDate from, LocalDate to) {
+        return fetchByDueDay(userId,
+            "SELECT id, title, notes, due_date, completed, created_at, status FROM tasks "
+                + "WHERE user_id = ? AND due_day BETWEEN ? AND ? ORDER BY due_day, created_at",
+            "Failed to fetch tasks by due date",
+            statement -> {
+                statement.setInt(1, userId);
+                statement.setLong(2, from.toEpochDay());
+                statement.setLong(3, to.toEpochDay());
+            });
+    }
 
-            statement.setInt(3, taskId);
-            statement.setInt(4, userId);
-            return statement.executeUpdate() > 0;
-        } catch (SQLException ex) {
-            throw new IllegalStateException("Failed to update task status", ex);
-        }
+    // The next limit open tasks due on or after the given day.
+    @Override
+    public List<Task> fetchNextDueTasks(int userId, LocalDate from, int limit) {
+        return fetchByDueDay(userId,
+            "SELECT id, title, notes, due_date, completed, created_at, status FROM tasks "
+                + "WHERE user_id = ? AND due_day >= ? AND status <> 'DONE' ORDER BY due_day, created_at LIMIT ?",
+            "Failed to fetch upcoming tasks",
+            statement -> {
+                statement.setInt(1, userId);
+                statement.setLong(2, from.toEpochDay());
+                statement.setInt(3, limit);
+            });
     }
 
-    public boolean deleteTask(int userId, int taskId) {
-        try (Connection connection = database.connect();
+    // Ranked full-text search over the user's task titles and notes. Each word of the query must match;
+    // the last word also matches as a prefix so results show up while the user is still typing. The
+    // owner is part of the MATCH, so only the user's own rows are matched and ranked.
+    @Override
+    public List<Task> searchTasks(int userId, String query, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Search limit must be positive");
+        }
+        String words = toFtsQuery(query);
+        if (words.isEmpty()) {
+            return new ArrayList<>();
+        }
+        String match = "user_id : \"" + userId + "\" AND {title notes} : (" + words + ")";
+        List<Task> tasks = new ArrayList<>();
+        try (Connection connection = database(userId).connectForRead();
              PreparedStatement statement = connection.prepareStatement(
-                 "DELETE FROM tasks WHERE id = ? AND user_id = ?"
+                 "SELECT t.id, t.title, t.notes, t.due_date, t.completed, t.created_at, t.status "
+                     + "FROM tasks_fts JOIN tasks t ON t.id = tasks_fts.rowid "
+                     + "WHERE tasks_fts MATCH ? ORDER BY tasks_fts.rank LIMIT ?"
              )) {
-            statement.setInt(1, taskId);
-            statement.setInt(2, userId);
-            return statement.executeUpdate() > 0;
+            statement.setString(1, match);
+            statement.setInt(2, limit);
+            readInto(statement, tasks);
         } catch (SQLException ex) {
-            throw new IllegalStateException("Failed to delete task", ex);
+            throw new IllegalStateException("Failed to search tasks", ex);
         }
+        return tasks;
+    }
+
+    @Override
+    public Task addTask(int userId, String title, String notes, String dueDate) {
+        return await(addTaskAsync(userId, title, notes, dueDate));
+    }
+
+    // Task writes go through the database's single writer; the future completes once the write is committed.
+    @Override
+    public CompletableFuture<Task> addTaskAsync(int userId, String title, String notes, String dueDate) {
+        return database(userId).writeQueue().submit("Failed to add task", connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_TASK_SQL)) {
+                return insertTask(statement, userId, new NewTask(title, notes, dueDate));
+            }
+        });
+    }
+
+    // Inserts all tasks in one transaction; the result holds the stored task for each input, in order.
+    @Override
+    public List<Task> addTasks(int userId, List<NewTask> newTasks) {
+        return await(database(userId).writeQueue().submit("Failed to add tasks", connection -> {
+            List<Task> added = new ArrayList<>(newTasks.size());
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_TASK_SQL)) {
+                for (NewTask newTask : newTasks) {
+                    added.add(insertTask(statement, userId, newTask));
+                }
+            }
+            return added;
+        }));
     }
 
+    @Override
+    public boolean updateTaskStatus(int userId, int taskId, TaskStatus status) {
+        return await(updateTaskStatusAsync(userId, taskId, status));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> updateTaskStatusAsync(int userId, int taskId, TaskStatus status) {
+        return database(userId).writeQueue().submit("Failed to update task status", connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_STATUS_SQL)) {
+                bindStatusChange(statement, userId, new StatusChange(taskId, status));
+                return statement.executeUpdate() > 0;
+            }
+        });
+    }
+
+    // Applies all status changes in one transaction; each result tells whether that task was updated.
+    @Override
+    public List<Boolean> updateStatuses(int userId, List<StatusChange> changes) {
+        return await(database(userId).writeQueue().submit("Failed to update task statuses", connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(UPDATE_STATUS_SQL)) {
+                return executeInBatches(statement, changes, change -> bindStatusChange(statement, userId, change));
+            }
+        }));
+    }
+
+    @Override
+    public boolean deleteTask(int userId, int taskId) {
+        return await(deleteTaskAsync(userId, taskId));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> deleteTaskAsync(int userId, int taskId) {
+        return database(userId).writeQueue().submit("Failed to delete task", connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(DELETE_TASK_SQL)) {
+                bindDelete(statement, userId, taskId);
+                return statement.executeUpdate() > 0;
+            }
+        });
+    }
+
+    // Deletes all tasks in one transaction; each result tells whether that task existed.
+    @Override
+    public List<Boolean> deleteTasks(int userId, List<Integer> taskIds) {
+        return await(database(userId).writeQueue().submit("Failed to delete tasks", connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(DELETE_TASK_SQL)) {
+                return executeInBatches(statement, taskIds, taskId -> bindDelete(statement, userId, taskId));
+            }
+        }));
+    }
+
+    // Archived tasks were all done, so they count towards both the total and the completed tasks.
+    @Override
     public TaskStats fetchStats(int userId) {
-        try (Connection connection = database.connect();
+        try (Connection connection = database(userId).connectForRead();
              PreparedStatement statement = connection.prepareStatement(
-                 "SELECT COUNT(*) AS total, SUM(CASE WHEN completed = 1 THEN 1 ELSE 0 END) AS done FROM tasks WHERE user_id = ?"
+                 "SELECT total, done, archived FROM user_task_counters WHERE user_id = ?"
              )) {
             statement.setInt(1, userId);
             try (ResultSet resultSet = statement.executeQuery()) {
                 if (resultSet.next()) {
                     int total = resultSet.getInt("total");
                     int done = resultSet.getInt("done");
-                    return new TaskStats(total, done);
+                    int archived = resultSet.getInt("archived");
+                    return new TaskStats(total + archived, done + archived);
                 }
             }
         } catch (SQLException ex) {
@@ -236,4 +482,405 @@ public class ToDoRepository {
         }
         return new TaskStats(0, 0);
     }
+
+    // Moves DONE tasks completed more than olderThan ago into archived_tasks and returns how many moved.
+    // Each batch is one small write on the shard's writer queue, so interactive writes get in between batches.
+    @Override
+    public int archiveCompletedTasks(Duration olderThan) {
+        String age = "-" + olderThan.toSeconds() + " seconds";
+        int archived = 0;
+        for (Database database : shards.shards()) {
+            List<Integer> owners;
+            do {
+                owners = archiveBatch(database, age);
+                archived += owners.size();
+            } while (owners.size() == ARCHIVE_BATCH_SIZE);
+        }
+        return archived;
+    }
+
+    // Archives up to one batch on the given shard and returns the owner of each archived task.
+    List<Integer> archiveBatch(Database database, String age) {
+        return await(database.writeQueue().submit("Failed to archive tasks", connection -> {
+            List<Integer> taskIds = new ArrayList<>();
+            List<Integer> owners = new ArrayList<>();
+            try (PreparedStatement statement = connection.prepareStatement(ARCHIVE_CANDIDATES_SQL)) {
+                statement.setString(1, age);
+                statement.setInt(2, ARCHIVE_BATCH_SIZE);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        taskIds.add(resultSet.getInt("id"));
+                        owners.add(resultSet.getInt("user_id"));
+                    }
+                }
+            }
+            if (taskIds.isEmpty()) {
+                return owners;
+            }
+            try (PreparedStatement archive = connection.prepareStatement(ARCHIVE_TASK_SQL);
+                 PreparedStatement delete = connection.prepareStatement("DELETE FROM tasks WHERE id = ?")) {
+                for (int taskId : taskIds) {
+                    archive.setInt(1, taskId);
+                    archive.addBatch();
+                    delete.setInt(1, taskId);
+                    delete.addBatch();
+                }
+                archive.executeBatch();
+                delete.executeBatch();
+            }
+            return owners;
+        }));
+    }
+
+    // Returns up to limit archived tasks completed before the given one, or the most recent when after is null.
+    @Override
+    public List<ArchivedTask> fetchArchivedTasks(int userId, ArchivedTask after, int limit) {
+        if (limit < 1) {
+            throw new IllegalArgumentException("Page size must be positive");
+        }
+        List<ArchivedTask> page = new ArrayList<>(limit);
+        try (Connection connection = database(userId).connectForRead();
+             PreparedStatement statement = connection.prepareStatement(ARCHIVE_PAGE_SQL)) {
+            statement.setInt(1, userId);
+            // '~' sorts after every digit, so the first page starts above any timestamp.
+            statement.setString(2, after == null ? "~" : after.completedAt());
+            statement.setInt(3, after == null ? Integer.MAX_VALUE : after.id());
+            statement.setInt(4, limit);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    page.add(readArchivedTask(resultSet));
+                }
+            }
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Failed to fetch archived tasks", ex);
+        }
+        return page;
+    }
+
+    // Moves an archived task back into the board's DONE column; empty when there is no such archived task.
+    @Override
+    public Optional<Task> restoreTask(int userId, int archivedTaskId) {
+        return await(database(userId).writeQueue().submit("Failed to restore task", connection -> {
+            Task restored = null;
+            try (PreparedStatement statement = connection.prepareStatement(RESTORE_TASK_SQL)) {
+                statement.setInt(1, archivedTaskId);
+                statement.setInt(2, userId);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (resultSet.next()) {
+                        restored = readTask(resultSet);
+                    }
+                }
+            }
+            if (restored == null) {
+                return Optional.<Task>empty();
+            }
+            try (PreparedStatement statement = connection.prepareStatement(
+                "DELETE FROM archived_tasks WHERE id = ? AND user_id = ?"
+            )) {
+                statement.setInt(1, archivedTaskId);
+                statement.setInt(2, userId);
+                statement.executeUpdate();
+            }
+            return Optional.of(restored);
+        }));
+    }
+
+    @Override
+    public TaskChanges fetchTasksChangedSince(int userId, long version) {
+        Database database = database(userId);
+        return database.readTransaction(() -> {
+            try (Connection connection = database.connectForRead()) {
+                long current = 0;
+                long compacted = 0;
+                try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT task_version, compacted_version FROM users WHERE id = ?"
+                )) {
+                    statement.setInt(1, userId);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        if (resultSet.next()) {
+                            current = resultSet.getLong("task_version");
+                            compacted = resultSet.getLong("compacted_version");
+                        }
+                    }
+                }
+                // Deletes at or before compacted may have lost their tombstones; a version from the
+                // future belongs to some other database.
+                if (version < compacted || version > current) {
+                    return new TaskChanges(current, true, loadTasks(userId), List.of());
+                }
+                List<Task> changed = new ArrayList<>();
+                try (PreparedStatement statement = connection.prepareStatement(CHANGED_TASKS_SQL)) {
+                    statement.setInt(1, userId);
+                    statement.setLong(2, version);
+                    readInto(statement, changed);
+                }
+                List<Integer> deleted = new ArrayList<>();
+                try (PreparedStatement statement = connection.prepareStatement(TOMBSTONES_SQL)) {
+                    statement.setInt(1, userId);
+                    statement.setLong(2, version);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        while (resultSet.next()) {
+                            deleted.add(resultSet.getInt("task_id"));
+                        }
+                    }
+                }
+                return new TaskChanges(current, false, changed, deleted);
+            } catch (SQLException ex) {
+                throw new IllegalStateException("Failed to fetch task changes", ex);
+            }
+        });
+    }
+
+    @Override
+    public int compactTombstones(Duration olderThan) {
+        String age = "-" + olderThan.toSeconds() + " seconds";
+        int compacted = 0;
+        for (Database database : shards.shards()) {
+            compacted += await(database.writeQueue().submit("Failed to compact tombstones", connection -> {
+                try (PreparedStatement raise = connection.prepareStatement(COMPACTED_VERSION_SQL);
+                     PreparedStatement delete = connection.prepareStatement(
+                         "DELETE FROM task_tombstones WHERE deleted_at < datetime('now', ?)"
+                     )) {
+                    raise.setString(1, age);
+                    raise.setString(2, age);
+                    raise.executeUpdate();
+                    delete.setString(1, age);
+                    return delete.executeUpdate();
+                }
+            }));
+        }
+        return compacted;
+    }
+
+    // Recomputes user_task_counters from the tasks and archived_tasks tables in one write transaction per shard.
+    @Override
+    public void rebuildTaskCounters() {
+        List<CompletableFuture<Void>> rebuilds = new ArrayList<>();
+        for (Database database : shards.shards()) {
+            rebuilds.add(database.writeQueue().submit("Failed to rebuild task counters", connection -> {
+                try (Statement statement = connection.createStatement()) {
+                    statement.executeUpdate("DELETE FROM user_task_counters");
+                    statement.executeUpdate(SchemaMigrations.COUNTERS_FROM_TASKS_SQL);
+                }
+                return null;
+            }));
+        }
+        rebuilds.forEach(ToDoRepository::await);
+    }
+
+    // Returns the ids of users whose stored counters differ from a full recount of their tasks.
+    @Override
+    public List<Integer> verifyTaskCounters() {
+        List<Integer> drifted = new ArrayList<>();
+        for (Database database : shards.shards()) {
+            drifted.addAll(database.readTransaction(() -> findDriftedCounters(database)));
+        }
+        drifted.sort(null);
+        return drifted;
+    }
+
+    // Runs the given repository reads against one consistent snapshot, e.g. a board and its stats.
+    @Override
+    public <T> T readConsistent(Supplier<T> reads) {
+        return shards.readTransaction(reads);
+    }
+
+    private Database database(int userId) {
+        return shards.forUser(userId);
+    }
+
+    private List<Integer> findDriftedCounters(Database database) {
+        Map<Integer, List<Integer>> stored = new HashMap<>();
+        Map<Integer, List<Integer>> recounted = new HashMap<>();
+        try (Connection connection = database.connectForRead();
+             Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery(
+                "SELECT user_id, total, todo, doing, done, archived FROM user_task_counters "
+                    + "WHERE total <> 0 OR todo <> 0 OR doing <> 0 OR done <> 0 OR archived <> 0"
+            )) {
+                readCounters(resultSet, stored);
+            }
+            try (ResultSet resultSet = statement.executeQuery(SchemaMigrations.RECOUNT_TASKS_SQL)) {
+                readCounters(resultSet, recounted);
+            }
+        } catch (SQLException ex) {
+            throw new IllegalStateException("Failed to verify task counters", ex);
+        }
+        Set<Integer> userIds = new TreeSet<>(stored.keySet());
+        userIds.addAll(recounted.keySet());
+        List<Integer> drifted = new ArrayList<>();
+        for (int userId : userIds) {
+            if (!Objects.equals(stored.get(userId), recounted.get(userId))) {
+                drifted.add(userId);
+            }
+        }
+        return drifted;
+    }
+
+    private static <T> T await(CompletableFuture<T> write) {
+        try {
+            return write.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw ex;
+        }
+    }
+
+    // Sends the items to SQLite in chunks of batchSize within the writer's transaction
+    // and maps each update count to a per-item result.
+    private <T> List<Boolean> executeInBatches(PreparedStatement statement, List<T> items, SqlBinder<T> binder)
+        throws SQLException {
+        List<Boolean> results = new ArrayList<>(items.size());
+        int pending = 0;
+        for (T item : items) {
+            binder.bind(item);
+            statement.addBatch();
+            if (++pending == batchSize) {
+                collectBatch(statement.executeBatch(), results);
+                pending = 0;
+            }
+        }
+        if (pending > 0) {
+            collectBatch(statement.executeBatch(), results);
+        }
+        return results;
+    }
+
+    private static void collectBatch(int[] counts, List<Boolean> results) {
+        for (int count : counts) {
+            results.add(count > 0);
+        }
+    }
+
+    private Task insertTask(PreparedStatement statement, int userId, NewTask newTask) throws SQLException {
+        statement.setInt(1, userId);
+        statement.setString(2, newTask.title());
+        statement.setString(3, newTask.notes() == null || newTask.notes().isBlank() ? null : newTask.notes());
+        String dueDate = newTask.dueDate() == null || newTask.dueDate().isBlank() ? null : newTask.dueDate();
+        statement.setString(4, dueDate);
+        Long dueDay = DueDates.toEpochDay(dueDate);
+        if (dueDay == null) {
+            statement.setNull(5, java.sql.Types.INTEGER);
+        } else {
+            statement.setLong(5, dueDay);
+        }
+        statement.setInt(6, 0);
+        statement.setString(7, TaskStatus.TODO.name());
+        try (ResultSet resultSet = statement.executeQuery()) {
+            if (resultSet.next()) {
+                return readTask(resultSet);
+            }
+        }
+        throw new SQLException("Insert returned no task row");
+    }
+
+    private static void bindStatusChange(PreparedStatement statement, int userId, StatusChange change) throws SQLException {
+        statement.setString(1, change.status().name());
+        statement.setInt(2, change.status() == TaskStatus.DONE ? 1 : 0);
+        statement.setInt(3, change.taskId());
+        statement.setInt(4, userId);
+    }
+
+    private static void bindDelete(PreparedStatement statement, int userId, int taskId) throws SQLException {
+        statement.setInt(1, taskId);
+        statement.setInt(2, userId);
+    }
+
+    private static void readCounters(ResultSet resultSet, Map<Integer, List<Integer>> counters) throws SQLException {
+        while (resultSet.next()) {
+            counters.put(resultSet.getInt("user_id"), List.of(
+                resultSet.getInt("total"),
+                resultSet.getInt("todo"),
+                resultSet.getInt("doing"),
+                resultSet.getInt("done"),
+                resultSet.getInt("archived")
+            ));
+        }
+    }
+
+    private List<Task> fetchByDueDay(int userId, String sql, String failureMessage, SqlBinder<PreparedStatement> binder) {
+        List<Task> tasks = new ArrayList<>();
+        try (Connection connection = database(userId).connectForRead();
+             PreparedStatement statement = connection.prepareStatement(sql)) {
+            binder.bind(statement);
+            readInto(statement, tasks);
+        } catch (SQLException ex) {
+            throw new IllegalStateException(failureMessage, ex);
+        }
+        return tasks;
+    }
+
+    // Quotes every word so user input can never be parsed as FTS5 query syntax.
+    private static String toFtsQuery(String query) {
+        if (query == null) {
+            return "";
+        }
+        StringBuilder match = new StringBuilder();
+        String[] words = query.trim().split("\\s+");
+        for (String raw : words) {
+            String word = raw.replace("\"", "");
+            if (word.isEmpty()) {
+                continue;
+            }
+            if (match.length() > 0) {
+                match.append(' ');
+            }
+            match.append('"').append(word).append('"');
+        }
+        // The prefix goes on the last word that is left, which need not be the last one typed: a
+        // trailing word made only of quotes is dropped.
+        if (match.length() > 0) {
+            match.append('*');
+        }
+        return match.toString();
+    }
+
+    private void readInto(PreparedStatement statement, List<Task> tasks) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                tasks.add(readTask(resultSet));
+            }
+        }
+    }
+
+    private static User readUser(ResultSet resultSet) throws SQLException {
+        return new User(
+            resultSet.getInt("id"),
+            resultSet.getString("name"),
+            resultSet.getString("display_name"),
+            resultSet.getString("focus_area"),
+            (Integer) resultSet.getObject("daily_goal")
+        );
+    }
+
+    private static ArchivedTask readArchivedTask(ResultSet resultSet) throws SQLException {
+        return new ArchivedTask(
+            resultSet.getInt("id"),
+            resultSet.getString("title"),
+            resultSet.getString("notes"),
+            resultSet.getString("due_date"),
+            resultSet.getString("created_at"),
+            resultSet.getString("completed_at"),
+            resultSet.getString("archived_at")
+        );
+    }
+
+    private Task readTask(ResultSet resultSet) throws SQLException {
+        return new Task(
+            resultSet.getInt("id"),
+            resultSet.getString("title"),
+            resultSet.getString("notes"),
+            resultSet.getString("due_date"),
+            resultSet.getInt("completed") == 1,
+            resultSet.getString("created_at"),
+            TaskStatus.fromDatabase(resultSet.getString("status"))
+        );
+    }
+
+    @FunctionalInterface
+    private interface SqlBinder<T> {
+        void bind(T item) throws SQLException;
+    }
 }
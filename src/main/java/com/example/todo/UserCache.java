@@ -0,0 +1,66 @@
+package com.example.todo;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+// Size-bounded LRU cache of users, addressable by id and by name.
+final class UserCache {
+    private final Map<Integer, User> byId;
+    private final Map<String, Integer> idsByName = new HashMap<>();
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    UserCache(int capacity) {
+        this.byId = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, User> eldest) {
+                if (size() <= capacity) {
+                    return false;
+                }
+                idsByName.remove(eldest.getValue().name());
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    synchronized Optional<User> byId(int userId) {
+        return record(byId.get(userId));
+    }
+
+    synchronized Optional<User> byName(String name) {
+        Integer userId = idsByName.get(name);
+        return record(userId == null ? null : byId.get(userId));
+    }
+
+    synchronized void put(User user) {
+        User previous = byId.put(user.id(), user);
+        if (previous != null && !previous.name().equals(user.name())) {
+            idsByName.remove(previous.name());
+        }
+        idsByName.put(user.name(), user.id());
+    }
+
+    synchronized void invalidate(int userId) {
+        User removed = byId.remove(userId);
+        if (removed != null) {
+            idsByName.remove(removed.name());
+        }
+    }
+
+    synchronized CacheStats stats() {
+        return new CacheStats(hits, misses, evictions);
+    }
+
+    private Optional<User> record(User user) {
+        if (user == null) {
+            misses++;
+            return Optional.empty();
+        }
+        hits++;
+        return Optional.of(user);
+    }
+}
@@ -0,0 +1,28 @@
+package com.example.todo;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Thread-per-task executors that use virtual threads when the runtime has them. The build targets
+// Java 17, so they are looked up reflectively; older runtimes get a pool of up to maxThreads daemon
+// platform threads instead, and callers must not have more than that many tasks running at once.
+final class VirtualThreads {
+    private VirtualThreads() {
+    }
+
+    static ExecutorService newThreadPerTaskExecutor(String threadNamePrefix, int maxThreads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            AtomicInteger counter = new AtomicInteger();
+            return Executors.newFixedThreadPool(maxThreads, runnable -> {
+                Thread thread = new Thread(runnable, threadNamePrefix + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+}
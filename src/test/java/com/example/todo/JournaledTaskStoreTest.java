@@ -0,0 +1,54 @@
+package com.example.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class JournaledTaskStoreTest {
+    // Negative, so tasks completed within the current second are old enough to archive.
+    private static final Duration ANY_AGE = Duration.ofSeconds(-60);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysArchiveIdsAfterSnapshotReusedFreedSlots() {
+        List<Task> board;
+        List<ArchivedTask> archive;
+        int userId;
+        try (JournaledTaskStore store = JournaledTaskStore.open(directory)) {
+            userId = store.ensureUser("ada").id();
+            Task a = store.addTask(userId, "A", null, null);
+            Task x = store.addTask(userId, "X", null, null);
+            Task b = store.addTask(userId, "B", null, null);
+            store.updateTaskStatus(userId, a.id(), TaskStatus.DONE);
+            store.updateTaskStatus(userId, b.id(), TaskStatus.DONE);
+            store.deleteTask(userId, x.id());
+            store.snapshot();
+
+            // C takes X's freed slot here, but lands after B when the journal is replayed.
+            Task c = store.addTask(userId, "C", null, null);
+            store.updateTaskStatus(userId, c.id(), TaskStatus.DONE);
+            assertEquals(3, store.archiveCompletedTasks(ANY_AGE));
+            int archivedC = archivedId(store.fetchArchivedTasks(userId, null, 10), "C");
+            assertEquals("C", store.restoreTask(userId, archivedC).orElseThrow().title());
+
+            board = store.fetchTasks(userId);
+            archive = store.fetchArchivedTasks(userId, null, 10);
+        }
+
+        try (JournaledTaskStore reopened = JournaledTaskStore.open(directory)) {
+            assertEquals(board, reopened.fetchTasks(userId));
+            assertEquals(archive, reopened.fetchArchivedTasks(userId, null, 10));
+            assertEquals(List.of("C"), reopened.fetchTasks(userId).stream().map(Task::title).toList());
+        }
+    }
+
+    private static int archivedId(List<ArchivedTask> archive, String title) {
+        return archive.stream().filter(task -> task.title().equals(title)).findFirst().orElseThrow().id();
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.todo;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import org.junit.jupiter.api.Test;
+
+// Wall-clock comparison, so it is left out of the normal test run, where a loaded machine would make
+// it fail at random. Run it on its own with: mvn test -Dtest=TaskWireCodecBenchmark
+class TaskWireCodecBenchmark {
+    private static final int PUSHES_PER_ROUND = 200;
+
+    @Test
+    void encodesAndDecodesPushesFasterThanJavaSerialization() throws Exception {
+        TaskWireCodec codec = new TaskWireCodec();
+        TaskSyncRequest request = TaskSyncRequest.pushTasks(TaskWireCodecTest.sampleTasks(1000));
+        byte[] binary = TaskWireCodecTest.binary(codec, request);
+        byte[] serialized = TaskWireCodecTest.serialized(request);
+        OutputStream sink = OutputStream.nullOutputStream();
+
+        // Best of a few rounds, so the first ones can warm up the JIT.
+        long bestBinary = Long.MAX_VALUE;
+        long bestSerialized = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < PUSHES_PER_ROUND; i++) {
+                codec.writeRequest(sink, request);
+                codec.readRequest(new ByteArrayInputStream(binary));
+            }
+            long middle = System.nanoTime();
+            for (int i = 0; i < PUSHES_PER_ROUND; i++) {
+                ObjectOutputStream out = new ObjectOutputStream(sink);
+                out.writeObject(request);
+                out.flush();
+                new ObjectInputStream(new ByteArrayInputStream(serialized)).readObject();
+            }
+            long end = System.nanoTime();
+            bestBinary = Math.min(bestBinary, middle - start);
+            bestSerialized = Math.min(bestSerialized, end - middle);
+        }
+        long binaryMicros = bestBinary / PUSHES_PER_ROUND / 1_000;
+        long serializedMicros = bestSerialized / PUSHES_PER_ROUND / 1_000;
+        System.out.printf("1000-task push: binary %d us, serialization %d us%n", binaryMicros, serializedMicros);
+        assertTrue(bestBinary < bestSerialized,
+            "binary " + binaryMicros + " us, serialization " + serializedMicros + " us per push");
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.todo;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+class TaskWireCodecTest {
+    private static final TaskStatus[] STATUSES = {TaskStatus.TODO, TaskStatus.DOING, TaskStatus.DONE, null};
+
+    @Test
+    void roundTripsRandomRequestsAndResponses() throws IOException {
+        Random random = new Random(1);
+        for (int version = TaskWireCodec.SINGLE_REQUEST_VERSION; version <= TaskWireCodec.VERSION; version++) {
+            TaskWireCodec codec = new TaskWireCodec(version);
+            for (int i = 0; i < 500; i++) {
+                List<Task> tasks = random.nextInt(10) == 0 ? null : randomTasks(random, random.nextInt(50));
+                String type = random.nextInt(3) == 0 ? "PUSH_TASKS"
+                    : random.nextBoolean() ? "GET_REPORT_CSV" : randomString(random);
+                String user = version >= TaskWireCodec.USER_VERSION ? randomString(random) : null;
+                TaskSyncResponse response = new TaskSyncResponse(random.nextBoolean(), randomString(random),
+                    randomString(random), version >= TaskWireCodec.DELTA_VERSION ? random.nextInt(1000) : 0);
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                codec.writeRequest(out, i, new TaskSyncRequest(user, type, tasks));
+                codec.writeResponse(out, i, response);
+                ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+
+                TaskSyncRequest request = codec.readRequest(in);
+                assertEquals(version >= TaskWireCodec.SESSION_VERSION ? i : 0, codec.requestId());
+                assertEquals(utf8(user), request.getUser());
+                assertEquals(utf8(type), request.getType());
+                assertEquals(utf8(tasks), request.getTasks());
+                TaskSyncResponse read = codec.readResponse(in);
+                assertEquals(response.isOk(), read.isOk());
+                assertEquals(utf8(response.getMessage()), read.getMessage());
+                assertEquals(utf8(response.getCsv()), read.getCsv());
+                assertEquals(response.getVersion(), read.getVersion());
+                assertEquals(-1, in.read());
+            }
+        }
+    }
+
+    @Test
+    void roundTripsDeltaPushes() throws IOException {
+        TaskWireCodec codec = new TaskWireCodec(TaskWireCodec.VERSION);
+        List<Task> changed = randomTasks(new Random(3), 10);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.writeRequest(out, 7, TaskSyncRequest.pushChanges("alice", 4, 9, false, changed, List.of(1, 2, 300)));
+
+        TaskSyncRequest request = codec.readRequest(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals("alice", request.getUser());
+        assertEquals("PUSH_CHANGES", request.getType());
+        assertEquals(4, request.getBaseVersion());
+        assertEquals(9, request.getVersion());
+        assertFalse(request.isReset());
+        assertEquals(utf8(changed), request.getTasks());
+        assertEquals(List.of(1, 2, 300), request.getDeletedTaskIds());
+    }
+
+    @Test
+    void keepsMissingAndEmptyTaskListsApart() throws IOException {
+        TaskWireCodec codec = new TaskWireCodec();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.writeRequest(out, TaskSyncRequest.getReportCsv());
+        codec.writeRequest(out, TaskSyncRequest.pushTasks(List.of()));
+        ByteArrayInputStream in = new ByteArrayInputStream(out.toByteArray());
+
+        assertNull(codec.readRequest(in).getTasks());
+        assertEquals(List.of(), codec.readRequest(in).getTasks());
+    }
+
+    @Test
+    void rejectsEveryTruncatedFrame() throws IOException {
+        TaskWireCodec codec = new TaskWireCodec(TaskWireCodec.VERSION);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.writeRequest(out, 1, TaskSyncRequest.pushTasks("bob", randomTasks(new Random(2), 20)));
+        byte[] frame = out.toByteArray();
+
+        for (int length = 0; length < frame.length; length++) {
+            byte[] truncated = Arrays.copyOf(frame, length);
+            assertThrows(IOException.class, () -> codec.readRequest(new ByteArrayInputStream(truncated)),
+                "frame cut at " + length + " of " + frame.length);
+        }
+        assertEquals(20, codec.readRequest(new ByteArrayInputStream(frame)).getTasks().size());
+    }
+
+    @Test
+    void tellsPreamblesFromJavaSerialization() throws IOException {
+        ByteArrayOutputStream preamble = new ByteArrayOutputStream();
+        TaskWireCodec.writePreamble(preamble, TaskWireCodec.VERSION);
+        PushbackInputStream in = new PushbackInputStream(new ByteArrayInputStream(preamble.toByteArray()), 2);
+        assertFalse(TaskWireCodec.isJavaSerialization(in));
+        assertEquals(TaskWireCodec.VERSION, TaskWireCodec.readPreamble(in));
+
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        new ObjectOutputStream(serialized).flush();
+        assertTrue(TaskWireCodec.isJavaSerialization(
+            new PushbackInputStream(new ByteArrayInputStream(serialized.toByteArray()), 2)));
+    }
+
+    @Test
+    void encodesPushesSmallerThanJavaSerialization() throws IOException {
+        TaskSyncRequest request = TaskSyncRequest.pushTasks(sampleTasks(1000));
+
+        int binary = binary(new TaskWireCodec(), request).length;
+        int serialized = serialized(request).length;
+        assertTrue(binary < serialized * 0.8, "binary " + binary + " bytes, serialized " + serialized + " bytes");
+    }
+
+    // Every string a distinct instance, as tasks read from the database are; serialization would
+    // otherwise write shared literals only once.
+    static List<Task> sampleTasks(int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tasks.add(new Task(i + 1, "Task number " + i, i % 3 == 0 ? new String("some notes here") : null,
+                "2026-10-" + (10 + i % 20), i % 2 == 0, new String("2026-10-01 12:00:00"),
+                TaskStatus.values()[i % 3]));
+        }
+        return tasks;
+    }
+
+    private static List<Task> randomTasks(Random random, int count) {
+        List<Task> tasks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int id = random.nextInt(5) == 0 ? -random.nextInt(1000) : random.nextInt(Integer.MAX_VALUE);
+            tasks.add(new Task(id, randomString(random), randomString(random), randomString(random),
+                random.nextBoolean(), randomString(random), STATUSES[random.nextInt(STATUSES.length)]));
+        }
+        return tasks;
+    }
+
+    // Mixes ASCII, two-, three- and four-byte UTF-8 and unpaired surrogates; null one time in six.
+    private static String randomString(Random random) {
+        if (random.nextInt(6) == 0) {
+            return null;
+        }
+        StringBuilder value = new StringBuilder();
+        int length = random.nextInt(40);
+        for (int i = 0; i < length; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 6) {
+                value.append((char) ('a' + random.nextInt(26)));
+            } else if (kind == 6) {
+                value.append('é');
+            } else if (kind == 7) {
+                value.append('漢');
+            } else if (kind == 8) {
+                value.appendCodePoint(0x1F600);
+            } else {
+                value.append(random.nextBoolean() ? '\uD800' : '\uDC00');
+            }
+        }
+        return value.toString();
+    }
+
+    // What a string looks like after a trip through UTF-8, which turns unpaired surrogates into '?'.
+    private static String utf8(String value) {
+        return value == null ? null : new String(value.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+    }
+
+    private static List<Task> utf8(List<Task> tasks) {
+        if (tasks == null) {
+            return null;
+        }
+        List<Task> converted = new ArrayList<>(tasks.size());
+        for (Task task : tasks) {
+            converted.add(new Task(task.id(), utf8(task.title()), utf8(task.notes()), utf8(task.dueDate()),
+                task.completed(), utf8(task.createdAt()), task.status()));
+        }
+        return converted;
+    }
+
+    static byte[] binary(TaskWireCodec codec, TaskSyncRequest request) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        codec.writeRequest(out, request);
+        return out.toByteArray();
+    }
+
+    static byte[] serialized(TaskSyncRequest request) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream objects = new ObjectOutputStream(out)) {
+            objects.writeObject(request);
+        }
+        return out.toByteArray();
+    }
+}